@@ -0,0 +1,85 @@
+package com.github.thunder413.netrequest;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+
+/**
+ * AndroidConnectivityMonitor
+ * <p>Connectivity state cached from the {@link ConnectivityManager}, it is queried once when
+ * the monitor is created and again only when a connectivity change is broadcast, instead of
+ * on every request.
+ * </p>
+ * @author Thunder413
+ * @version 1.4
+ */
+@SuppressWarnings("WeakerAccess")
+public class AndroidConnectivityMonitor extends NetConnectivityMonitor {
+    /**
+     * Application context
+     */
+    private final Context context;
+    /**
+     * Receiver of connectivity changes
+     */
+    private final BroadcastReceiver receiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            refresh();
+        }
+    };
+    /**
+     * Cached state
+     */
+    private volatile boolean connected;
+
+    /**
+     * Constructor, starts listening to connectivity changes
+     * @param context Context, its application context is kept
+     */
+    public AndroidConnectivityMonitor(Context context) {
+        Context applicationContext = context.getApplicationContext();
+        this.context   = (applicationContext != null) ? applicationContext : context;
+        this.connected = query();
+        this.context.registerReceiver(receiver, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+    }
+
+    @Override
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Stop listening to connectivity changes
+     */
+    public void stop() {
+        context.unregisterReceiver(receiver);
+    }
+
+    /**
+     * Query the connectivity manager and notify listeners if the state changed
+     */
+    private void refresh() {
+        boolean current = query();
+        if (current != connected) {
+            connected = current;
+            notifyConnectivityChanged(current);
+        }
+    }
+
+    /**
+     * Query the connectivity manager
+     * @return True if a network is available
+     */
+    private boolean query() {
+        ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (cm == null) {
+            return false;
+        }
+        NetworkInfo info = cm.getActiveNetworkInfo();
+        return info != null;
+    }
+}
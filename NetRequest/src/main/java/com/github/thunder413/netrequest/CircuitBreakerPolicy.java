@@ -0,0 +1,144 @@
+package com.github.thunder413.netrequest;
+
+/**
+ * CircuitBreakerPolicy
+ * <p>Thresholds of the per host circuit breakers, see {@link NetCircuitBreaker}. The breaker
+ * of a host opens once at least {@code minimumCalls} of its last {@code windowSize} requests
+ * completed and the share of failures among them reaches {@code failureRateThreshold}. It
+ * stays open for {@code openDuration} then lets {@code halfOpenProbes} requests through to
+ * decide whether to close again.
+ * </p>
+ * @author Thunder413
+ * @version 1.4
+ */
+@SuppressWarnings("WeakerAccess")
+public class CircuitBreakerPolicy {
+    /**
+     * Share of failures opening the breaker
+     */
+    private float failureRateThreshold = 0.5f;
+    /**
+     * Number of last requests considered
+     */
+    private int windowSize = 20;
+    /**
+     * Number of requests needed before the failure rate is considered
+     */
+    private int minimumCalls = 10;
+    /**
+     * Time the breaker stays open in milliseconds
+     */
+    private long openDuration = 30000;
+    /**
+     * Number of requests let through while half open
+     */
+    private int halfOpenProbes = 3;
+
+    /**
+     * Set the share of failures opening the breaker
+     * @param failureRateThreshold Share between 0 exclusive and 1 inclusive
+     */
+    public CircuitBreakerPolicy setFailureRateThreshold(float failureRateThreshold) {
+        if (failureRateThreshold <= 0 || failureRateThreshold > 1) {
+            throw new IllegalArgumentException("failureRateThreshold: " + failureRateThreshold);
+        }
+        this.failureRateThreshold = failureRateThreshold;
+        return this;
+    }
+
+    /**
+     * Get the share of failures opening the breaker
+     * @return Share
+     */
+    public float getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    /**
+     * Set the number of last requests considered
+     * @param windowSize Size, at least 1
+     */
+    public CircuitBreakerPolicy setWindowSize(int windowSize) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("windowSize < 1: " + windowSize);
+        }
+        this.windowSize = windowSize;
+        return this;
+    }
+
+    /**
+     * Get the number of last requests considered
+     * @return Size
+     */
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * Set the number of requests needed before the failure rate is considered
+     * @param minimumCalls Count, at least 1 and at most the window size, checked when the
+     *                     policy is applied since the breaker could never open otherwise
+     */
+    public CircuitBreakerPolicy setMinimumCalls(int minimumCalls) {
+        if (minimumCalls < 1) {
+            throw new IllegalArgumentException("minimumCalls < 1: " + minimumCalls);
+        }
+        this.minimumCalls = minimumCalls;
+        return this;
+    }
+
+    /**
+     * Get the number of requests needed before the failure rate is considered
+     * @return Count
+     */
+    public int getMinimumCalls() {
+        return minimumCalls;
+    }
+
+    /**
+     * Set the time the breaker stays open
+     * @param millis Duration in milliseconds
+     */
+    public CircuitBreakerPolicy setOpenDuration(long millis) {
+        this.openDuration = millis;
+        return this;
+    }
+
+    /**
+     * Get the time the breaker stays open
+     * @return Duration in milliseconds
+     */
+    public long getOpenDuration() {
+        return openDuration;
+    }
+
+    /**
+     * Set the number of requests let through while half open
+     * @param halfOpenProbes Count, at least 1
+     */
+    public CircuitBreakerPolicy setHalfOpenProbes(int halfOpenProbes) {
+        if (halfOpenProbes < 1) {
+            throw new IllegalArgumentException("halfOpenProbes < 1: " + halfOpenProbes);
+        }
+        this.halfOpenProbes = halfOpenProbes;
+        return this;
+    }
+
+    /**
+     * Get the number of requests let through while half open
+     * @return Count
+     */
+    public int getHalfOpenProbes() {
+        return halfOpenProbes;
+    }
+
+    /**
+     * Check that the thresholds are consistent
+     * @throws IllegalArgumentException When the minimum number of calls exceeds the window size
+     */
+    void validate() {
+        if (minimumCalls > windowSize) {
+            throw new IllegalArgumentException("minimumCalls > windowSize: " + minimumCalls + " > " + windowSize);
+        }
+    }
+}
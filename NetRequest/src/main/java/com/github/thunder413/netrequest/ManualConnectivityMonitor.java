@@ -0,0 +1,45 @@
+package com.github.thunder413.netrequest;
+
+/**
+ * ManualConnectivityMonitor
+ * <p>Connectivity state set by hand, useful to simulate network changes in tests or to let
+ * the application own the connectivity detection.
+ * </p>
+ * @author Thunder413
+ * @version 1.4
+ */
+@SuppressWarnings("WeakerAccess")
+public class ManualConnectivityMonitor extends NetConnectivityMonitor {
+    /**
+     * Current state
+     */
+    private volatile boolean connected;
+
+    /**
+     * Constructor
+     * @param connected Initial state
+     */
+    public ManualConnectivityMonitor(boolean connected) {
+        this.connected = connected;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Change the state, listeners are notified if it differs from the current one
+     * @param connected New state
+     */
+    public void setConnected(boolean connected) {
+        boolean changed;
+        synchronized (this) {
+            changed = this.connected != connected;
+            this.connected = connected;
+        }
+        if (changed) {
+            notifyConnectivityChanged(connected);
+        }
+    }
+}
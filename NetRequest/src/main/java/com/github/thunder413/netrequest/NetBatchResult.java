@@ -0,0 +1,101 @@
+package com.github.thunder413.netrequest;
+
+/**
+ * NetBatchResult
+ * <p>
+ *     Outcome of one request of a {@link NetRequestBatch}
+ * </p>
+ * @version 1.4
+ * @author Thunder413
+ */
+@SuppressWarnings("WeakerAccess")
+public class NetBatchResult {
+    /**
+     * Request
+     */
+    private final NetRequest request;
+    /**
+     * Status, {@link NetErrorStatus#SUCCESS} when a response has been received
+     */
+    private final NetErrorStatus status;
+    /**
+     * Response, null on error
+     */
+    private final NetResponse response;
+    /**
+     * Error, null on success
+     */
+    private final NetError error;
+    /**
+     * Time between the start of the request and its outcome
+     */
+    private final long duration;
+
+    /**
+     * Constructor
+     * @param request NetRequest
+     * @param response NetResponse, null on error
+     * @param error NetError, null on success
+     * @param duration Duration in milliseconds
+     */
+    NetBatchResult(NetRequest request, NetResponse response, NetError error, long duration) {
+        this.request  = request;
+        this.response = response;
+        this.error    = error;
+        this.status   = (error == null) ? NetErrorStatus.SUCCESS : error.getStatus();
+        this.duration = duration;
+    }
+
+    /**
+     * Get request
+     * @return NetRequest
+     */
+    public NetRequest getRequest() {
+        return request;
+    }
+
+    /**
+     * Get status
+     * @return NetErrorStatus
+     */
+    public NetErrorStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * Tell whether or not a response has been received
+     * @return True on success
+     */
+    public boolean isSuccess() {
+        return status == NetErrorStatus.SUCCESS;
+    }
+
+    /**
+     * Get response
+     * @return NetResponse, null on error
+     */
+    public NetResponse getResponse() {
+        return response;
+    }
+
+    /**
+     * Get error
+     * @return NetError, null on success
+     */
+    public NetError getError() {
+        return error;
+    }
+
+    /**
+     * Get duration, 0 for requests that were never started
+     * @return Duration in milliseconds
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    @Override
+    public String toString() {
+        return status + " (" + duration + "ms)";
+    }
+}
@@ -0,0 +1,225 @@
+package com.github.thunder413.netrequest;
+
+/**
+ * NetCircuitBreaker
+ * <p>Circuit breaker of a single host. While closed every request goes through and outcomes
+ * are recorded in a ring buffer of the last requests. When the failure rate of that window
+ * crosses the threshold the breaker opens and requests fail immediately with
+ * {@link NetErrorStatus#CIRCUIT_OPEN} without opening a connection. Once the open duration
+ * elapsed the breaker is half open and lets a limited number of probe requests through: the
+ * first failing probe opens it again, when all of them succeed it closes.
+ * </p>
+ * <p>{@link #tryAcquire()} hands out a permit that the request gives back with its outcome,
+ * so that only the requests that took a probe count as probes: the outcome of a request
+ * started before the breaker opened is ignored while half open.
+ * </p>
+ * @author Thunder413
+ * @version 1.4
+ */
+@SuppressWarnings("WeakerAccess")
+public class NetCircuitBreaker {
+    /**
+     * Permit of a request that must fail immediately
+     */
+    public static final long REFUSED = -1;
+    /**
+     * Permit of a request let through while closed, it holds no probe
+     */
+    public static final long CALL = 0;
+
+    /**
+     * Breaker state
+     */
+    public enum State {
+        /**
+         * Requests go through
+         */
+        CLOSED,
+        /**
+         * Requests fail immediately
+         */
+        OPEN,
+        /**
+         * A limited number of probe requests go through
+         */
+        HALF_OPEN
+    }
+
+    /**
+     * Thresholds
+     */
+    private final CircuitBreakerPolicy policy;
+    /**
+     * Outcomes of the last requests, true for failures
+     */
+    private final boolean[] window;
+    /**
+     * Next slot of the window
+     */
+    private int windowIndex;
+    /**
+     * Number of recorded outcomes, up to the window size
+     */
+    private int windowCount;
+    /**
+     * Number of failures in the window
+     */
+    private int failures;
+    /**
+     * Current state
+     */
+    private State state = State.CLOSED;
+    /**
+     * Time the breaker opened at, in nanoseconds
+     */
+    private long openedAt;
+    /**
+     * Number of the current or last half open period, the permit of its probes
+     */
+    private long halfOpenPeriod;
+    /**
+     * Probes let through while half open
+     */
+    private int probesStarted;
+    /**
+     * Probes that succeeded while half open
+     */
+    private int probesSucceeded;
+
+    /**
+     * Constructor
+     * @param policy Thresholds
+     * @throws IllegalArgumentException When the minimum number of calls exceeds the window size
+     */
+    public NetCircuitBreaker(CircuitBreakerPolicy policy) {
+        policy.validate();
+        this.policy = policy;
+        this.window = new boolean[policy.getWindowSize()];
+    }
+
+    /**
+     * Get current state
+     * @return State
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Tell whether or not a request would currently go through, without taking a probe slot
+     * @return False if the request must fail immediately
+     */
+    public synchronized boolean isCallPermitted() {
+        if (state == State.OPEN) {
+            return System.nanoTime() - openedAt >= policy.getOpenDuration() * 1000000L;
+        }
+        return state == State.CLOSED || probesStarted < policy.getHalfOpenProbes();
+    }
+
+    /**
+     * Tell whether or not a request may go through, a probe slot is taken when half open
+     * @return {@link #REFUSED} if the request must fail immediately, otherwise the permit to
+     * give back to {@link #onResult(long, boolean)} or {@link #onIgnored(long)}
+     */
+    public synchronized long tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < policy.getOpenDuration() * 1000000L) {
+                return REFUSED;
+            }
+            state           = State.HALF_OPEN;
+            probesStarted   = 0;
+            probesSucceeded = 0;
+            halfOpenPeriod++;
+        }
+        if (state == State.HALF_OPEN) {
+            if (probesStarted >= policy.getHalfOpenProbes()) {
+                return REFUSED;
+            }
+            probesStarted++;
+            return halfOpenPeriod;
+        }
+        return CALL;
+    }
+
+    /**
+     * Tell whether or not a permit is a probe of the current half open period
+     * @param permit Permit
+     * @return True|False
+     */
+    private boolean isProbe(long permit) {
+        return state == State.HALF_OPEN && permit == halfOpenPeriod;
+    }
+
+    /**
+     * Record a request that went through
+     * @param permit Permit the request got from {@link #tryAcquire()}
+     * @param failure Whether or not the request failed because of the host
+     */
+    public synchronized void onResult(long permit, boolean failure) {
+        if (state == State.HALF_OPEN) {
+            if (!isProbe(permit)) {
+                // Started before the breaker opened, it tells nothing about the host recovery
+                return;
+            }
+            if (failure) {
+                open();
+            } else if (++probesSucceeded >= policy.getHalfOpenProbes()) {
+                close();
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            return;
+        }
+        if (windowCount == window.length) {
+            if (window[windowIndex]) {
+                failures--;
+            }
+        } else {
+            windowCount++;
+        }
+        window[windowIndex] = failure;
+        if (failure) {
+            failures++;
+        }
+        windowIndex = (windowIndex + 1) % window.length;
+        if (windowCount >= policy.getMinimumCalls()
+                && failures >= policy.getFailureRateThreshold() * windowCount) {
+            open();
+        }
+    }
+
+    /**
+     * Record a request that went through without any outcome, e.g. cancelled, its probe slot
+     * is released if it took one
+     * @param permit Permit the request got from {@link #tryAcquire()}
+     */
+    public synchronized void onIgnored(long permit) {
+        if (isProbe(permit) && probesStarted > 0) {
+            probesStarted--;
+        }
+    }
+
+    /**
+     * Open the breaker
+     */
+    private void open() {
+        state    = State.OPEN;
+        openedAt = System.nanoTime();
+    }
+
+    /**
+     * Close the breaker and forget past outcomes
+     */
+    private void close() {
+        state       = State.CLOSED;
+        windowIndex = 0;
+        windowCount = 0;
+        failures    = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return state + " " + failures + "/" + windowCount;
+    }
+}
@@ -0,0 +1,109 @@
+package com.github.thunder413.netrequest;
+
+/**
+ * NetConcurrencyLimit
+ * <p>Adaptive limit of in flight requests for a host, following an AIMD scheme driven by
+ * the observed round trip time and errors. The limit grows by about one request per round
+ * trip while requests are answered close to the lowest round trip seen and shrinks by a
+ * constant factor when the round trip inflates beyond the tolerance, meaning requests are
+ * queuing somewhere, or when the server answers with an error.
+ * </p>
+ * <p>The lowest round trip is forgotten every {@link #RTT_RESET_SAMPLES} samples so that
+ * the limit follows network changes.
+ * </p>
+ * @author Thunder413
+ * @version 1.4
+ */
+@SuppressWarnings("WeakerAccess")
+public class NetConcurrencyLimit {
+    /**
+     * Factor applied to the limit on overload
+     */
+    public static final double BACKOFF_RATIO = 0.9;
+    /**
+     * Round trip above lowest round trip times this tolerance is an overload signal
+     */
+    public static final double RTT_TOLERANCE = 2.0;
+    /**
+     * Number of samples after which the lowest round trip is measured again
+     */
+    public static final int RTT_RESET_SAMPLES = 500;
+    /**
+     * Lower bound
+     */
+    private final int minLimit;
+    /**
+     * Upper bound
+     */
+    private final int maxLimit;
+    /**
+     * Current limit
+     */
+    private double limit;
+    /**
+     * Lowest round trip in nanoseconds, 0 when unknown
+     */
+    private long minRtt;
+    /**
+     * Samples since the lowest round trip was reset
+     */
+    private int samples;
+
+    /**
+     * Constructor
+     * @param initialLimit Starting limit
+     * @param minLimit Lower bound, at least 1
+     * @param maxLimit Upper bound
+     */
+    public NetConcurrencyLimit(int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Invalid bounds: " + minLimit + ".." + maxLimit);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit    = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * Get current limit
+     * @return Limit
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Get lowest round trip observed
+     * @return Round trip in milliseconds, 0 when unknown
+     */
+    public synchronized long getMinRtt() {
+        return minRtt / 1000000L;
+    }
+
+    /**
+     * Record the outcome of a request
+     * @param rtt Round trip in nanoseconds
+     * @param inFlight Requests in flight for the host when the request completed
+     * @param overloaded Whether or not the server answered with an overload error
+     */
+    public synchronized void onSample(long rtt, int inFlight, boolean overloaded) {
+        if (++samples >= RTT_RESET_SAMPLES) {
+            samples = 0;
+            minRtt  = 0;
+        }
+        if (!overloaded && (minRtt == 0 || rtt < minRtt)) {
+            minRtt = rtt;
+        }
+        if (overloaded || rtt > minRtt * RTT_TOLERANCE) {
+            limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+        } else if (inFlight * 2 >= limit) {
+            // Only grow when the limit is actually being used
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "limit=" + getLimit() + " minRtt=" + getMinRtt() + "ms";
+    }
+}
@@ -0,0 +1,66 @@
+package com.github.thunder413.netrequest;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * NetConnectivityMonitor
+ * <p>Source of the connectivity state consulted before a request is queued. Implementations
+ * keep the state cached and update it when the network changes so that checking it is cheap,
+ * {@link AndroidConnectivityMonitor} is used by default and {@link ManualConnectivityMonitor}
+ * can be set on the manager to drive the state by hand, e.g. in tests.
+ * </p>
+ * @author Thunder413
+ * @version 1.4
+ * @see NetRequestManager#setConnectivityMonitor(NetConnectivityMonitor)
+ */
+@SuppressWarnings("WeakerAccess")
+public abstract class NetConnectivityMonitor {
+    /**
+     * Connectivity change listener
+     */
+    public interface Listener {
+        /**
+         * Triggered when the connectivity state changes
+         * @param connected New state
+         */
+        void onConnectivityChanged(boolean connected);
+    }
+
+    /**
+     * Listeners
+     */
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Check if a network is available
+     * @return Cached state
+     */
+    public abstract boolean isConnected();
+
+    /**
+     * Add a listener
+     * @param listener Listener
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Remove a listener
+     * @param listener Listener
+     */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Notify listeners of a new state
+     * @param connected New state
+     */
+    protected void notifyConnectivityChanged(boolean connected) {
+        for (Listener listener : listeners) {
+            listener.onConnectivityChanged(connected);
+        }
+    }
+}
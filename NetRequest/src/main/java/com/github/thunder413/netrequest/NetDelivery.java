@@ -0,0 +1,166 @@
+package com.github.thunder413.netrequest;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * NetDelivery
+ * <p>Factory of executors that can be given to {@link NetRequestManager#setDeliveryExecutor(Executor)}
+ * or {@link NetRequest#setDeliveryExecutor(Executor)} to decide on which thread the response
+ * listeners are triggered. Results are delivered on the main thread by default, any other
+ * Executor can be supplied as well.
+ * </p>
+ * <p>Listeners triggered off the main thread must not touch the views, requests bound to an
+ * Activity are still checked against {@link android.app.Activity#isFinishing()} before delivery.
+ * </p>
+ * @author Thunder413
+ * @version 1.4
+ */
+@SuppressWarnings("WeakerAccess")
+public final class NetDelivery {
+    /**
+     * Default main thread delivery
+     */
+    private static final Executor MAIN_THREAD = looper(Looper.getMainLooper());
+    /**
+     * Coalescing main thread delivery, shared so that every request coalesces in the same
+     * looper message
+     */
+    private static final Executor COALESCING_MAIN_THREAD = coalescing(Looper.getMainLooper());
+    /**
+     * Direct delivery
+     */
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    /**
+     * Not instantiable
+     */
+    private NetDelivery() {}
+
+    /**
+     * Deliver on the main thread, one looper message per result, the default
+     * @return Executor
+     */
+    public static Executor mainThread() {
+        return MAIN_THREAD;
+    }
+
+    /**
+     * Deliver on the main thread, results completing while a delivery is already pending
+     * are delivered by the same looper message instead of one message each. The same
+     * instance is returned on each call
+     * @return Executor
+     */
+    public static Executor coalescingMainThread() {
+        return COALESCING_MAIN_THREAD;
+    }
+
+    /**
+     * Deliver directly on the thread completing the request, the network or the parse
+     * thread, saving the hop to the main thread when results are handed to another worker
+     * @return Executor
+     */
+    public static Executor direct() {
+        return DIRECT;
+    }
+
+    /**
+     * Deliver on the thread calling this method, e.g. a HandlerThread worker, it must have
+     * a Looper
+     * @return Executor
+     * @throws IllegalStateException When the calling thread has no Looper
+     */
+    public static Executor callingThread() {
+        Looper looper = Looper.myLooper();
+        if (looper == null) {
+            throw new IllegalStateException("NetDelivery.callingThread() called on a thread without Looper");
+        }
+        return looper(looper);
+    }
+
+    /**
+     * Deliver on the thread of a Looper, one looper message per result
+     * @param looper Looper
+     * @return Executor
+     */
+    public static Executor looper(Looper looper) {
+        final Handler handler = new Handler(looper);
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                handler.post(command);
+            }
+        };
+    }
+
+    /**
+     * Deliver on the thread of a Looper, results completing while a delivery is already
+     * pending are delivered by the same looper message
+     * @param looper Looper
+     * @return Executor
+     */
+    public static Executor coalescing(Looper looper) {
+        return new CoalescingExecutor(new Handler(looper));
+    }
+
+    /**
+     * Executor draining every pending command in a single looper message
+     */
+    private static final class CoalescingExecutor implements Executor, Runnable {
+        /**
+         * Looper handler
+         */
+        private final Handler handler;
+        /**
+         * Pending commands
+         */
+        private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+        /**
+         * Whether or not a message is posted and not drained yet
+         */
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        /**
+         * Constructor
+         * @param handler Looper handler
+         */
+        CoalescingExecutor(Handler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            pending.add(command);
+            if (scheduled.compareAndSet(false, true)) {
+                handler.post(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            // Cleared before draining so a command added past the drain posts a new message
+            scheduled.set(false);
+            try {
+                Runnable command;
+                while ((command = pending.poll()) != null) {
+                    command.run();
+                }
+            } finally {
+                // A throwing listener must not strand the remaining commands
+                if (!pending.isEmpty() && scheduled.compareAndSet(false, true)) {
+                    handler.post(this);
+                }
+            }
+        }
+    }
+}
@@ -19,14 +19,28 @@ public class NetError {
      * Request tag
      */
     private final Object tag;
+    /**
+     * Http status code of the response, 0 when none was received
+     */
+    private final int responseCode;
     /**
      * Constructor
      * @param status ErrorStatus
      * @param tag Error to set
      */
     public NetError(NetErrorStatus status, Object tag) {
+        this(status, tag, 0);
+    }
+    /**
+     * Constructor
+     * @param status ErrorStatus
+     * @param tag Error to set
+     * @param responseCode Http status code, 0 when no response was received
+     */
+    public NetError(NetErrorStatus status, Object tag, int responseCode) {
         this.status = status;
         this.tag = tag;
+        this.responseCode = responseCode;
     }
 
     /**
@@ -43,6 +57,13 @@ public class NetError {
     public Object getTag() {
         return tag;
     }
+    /**
+     * Get the http status code of the response
+     * @return Status code, 0 when no response was received
+     */
+    public int getResponseCode() {
+        return responseCode;
+    }
 
     @Override
     public String toString() {
@@ -47,6 +47,27 @@ public enum NetErrorStatus {
      * Request task canceled
      */
     CANCELED,
+    /**
+     * Request not performed because the circuit breaker of its host is open
+     * @see NetRequestManager#setCircuitBreakerPolicy(CircuitBreakerPolicy)
+     */
+    CIRCUIT_OPEN,
+    /**
+     * Request deadline elapsed or connect / read timeout
+     * @see NetRequest#setTimeout(long)
+     */
+    TIMEOUT,
+    /**
+     * No network connection, the request has been persisted and will be performed once the
+     * network is back
+     * @see NetRequest#setQueueWhenOffline(boolean)
+     */
+    OFFLINE_QUEUED,
+    /**
+     * Request rejected or dropped because the queue reached its maximum depth
+     * @see NetRequestManager#setMaxQueueDepth(int)
+     */
+    QUEUE_FULL,
     /**
      * Request task success
      */
@@ -0,0 +1,140 @@
+package com.github.thunder413.netrequest;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * NetExecutors
+ * <p>Factory of executors that can be given to
+ * {@link NetRequestManager#setExecutorService(ExecutorService)} to run the requests.
+ * The dispatcher already bounds the number of requests in flight, the executor only
+ * decides which threads perform them. Any other ExecutorService can be supplied as well.
+ * </p>
+ * @author Thunder413
+ * @version 1.4
+ */
+@SuppressWarnings("WeakerAccess")
+public final class NetExecutors {
+    /**
+     * Not instantiable
+     */
+    private NetExecutors() {}
+
+    /**
+     * Thread factory naming threads after the library
+     * @param name Thread name prefix
+     * @return ThreadFactory
+     */
+    static ThreadFactory threadFactory(final String name) {
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name + " #" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Pool creating threads on demand and recycling idle ones, the default executor
+     * @return ExecutorService
+     */
+    public static ExecutorService newCachedPool() {
+        return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(), threadFactory("NetRequest"));
+    }
+
+    /**
+     * Pool with a fixed number of threads, requests promoted by the dispatcher beyond
+     * that number wait in the pool queue
+     * @param threads Number of threads
+     * @return ExecutorService
+     */
+    public static ExecutorService newFixedPool(int threads) {
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), threadFactory("NetRequest"));
+    }
+
+    /**
+     * Pool running the CPU bound parse stage, one thread per available processor
+     * @return ExecutorService
+     */
+    public static ExecutorService newParsePool() {
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), threadFactory("NetRequest parse"));
+    }
+
+    /**
+     * Pool running the hedge requests, kept apart from the request executor so that a hedge
+     * never waits behind the requests it races
+     * @return ExecutorService
+     */
+    static ExecutorService newHedgePool() {
+        return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(), threadFactory("NetRequest hedge"));
+    }
+
+    /**
+     * Work stealing pool sized to the available processors, falls back to a fixed pool
+     * of the same size where the platform does not provide one (before API 24)
+     * @return ExecutorService
+     */
+    public static ExecutorService newWorkStealingPool() {
+        ExecutorService executorService = invokeExecutorsFactory("newWorkStealingPool");
+        if (executorService != null) {
+            return executorService;
+        }
+        return newFixedPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * One virtual thread per request where the runtime supports them (JDK 21 and later),
+     * so blocking I/O can scale to thousands of requests without as many platform threads.
+     * Falls back to {@link #newCachedPool()} elsewhere, including on Android
+     * @return ExecutorService
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        ExecutorService executorService = invokeExecutorsFactory("newVirtualThreadPerTaskExecutor");
+        if (executorService != null) {
+            return executorService;
+        }
+        return newCachedPool();
+    }
+
+    /**
+     * Tell whether or not the runtime provides virtual threads
+     * @return True if {@link #newVirtualThreadPerTaskExecutor()} uses virtual threads
+     */
+    public static boolean isVirtualThreadSupported() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Call a no argument factory of {@link Executors} that may not exist on this runtime
+     * @param name Method name
+     * @return ExecutorService, null if not available
+     */
+    private static ExecutorService invokeExecutorsFactory(String name) {
+        try {
+            Method method = Executors.class.getMethod(name);
+            return (ExecutorService) method.invoke(null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package com.github.thunder413.netrequest;
+
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * NetFuture
+ * <p>
+ *     Result of a request loaded with {@link NetRequest#loadAsync()}. Results are pushed to
+ *     callbacks as soon as they are available so dependent requests can be chained with
+ *     {@link #thenCompose(Continuation)} and fanned in with {@link #allOf(List)} without
+ *     blocking any thread. Cancelling the future cancels the request and disconnects it.
+ * </p>
+ * <p>
+ *     Callbacks run on the thread completing the future, for requests the thread of their
+ *     delivery executor, the main thread by default.
+ *     {@link #get()} must therefore not be called from the main thread.
+ * </p>
+ * @version 1.4
+ * @author Thunder413
+ */
+@SuppressWarnings("WeakerAccess")
+public class NetFuture<T> implements Future<T> {
+    /**
+     * Completion callback
+     */
+    public interface Callback<T> {
+        /**
+         * Fires when the future completes successfully
+         * @param value Result
+         */
+        void onSuccess(T value);
+        /**
+         * Fires when the future fails or is cancelled
+         * @param error NetError, status is {@link NetErrorStatus#CANCELED} on cancel
+         */
+        void onFailure(NetError error);
+    }
+
+    /**
+     * Next stage factory used by {@link #thenCompose(Continuation)}
+     */
+    public interface Continuation<T, U> {
+        /**
+         * Start the next stage
+         * @param value Result of the previous stage
+         * @return Future of the next stage
+         */
+        NetFuture<U> then(T value);
+    }
+
+    /**
+     * Released once the future completes
+     */
+    private final CountDownLatch done = new CountDownLatch(1);
+    /**
+     * Completion state, set once
+     */
+    private final AtomicReference<Outcome<T>> outcome = new AtomicReference<>();
+    /**
+     * Registered callbacks
+     */
+    private final List<Callback<T>> callbacks = new CopyOnWriteArrayList<>();
+    /**
+     * Action performed on cancel, cancels the underlying request or stage
+     */
+    private volatile Runnable onCancel;
+
+    /**
+     * Immutable outcome
+     */
+    private static final class Outcome<T> {
+        final T value;
+        final NetError error;
+
+        Outcome(T value, NetError error) {
+            this.value = value;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Constructor
+     */
+    NetFuture() {}
+
+    /**
+     * Set the action performed on cancel
+     * @param onCancel Runnable
+     */
+    void setOnCancel(Runnable onCancel) {
+        this.onCancel = onCancel;
+    }
+
+    /**
+     * Complete successfully
+     * @param value Result
+     * @return False if already completed
+     */
+    boolean complete(T value) {
+        return setOutcome(new Outcome<>(value, null));
+    }
+
+    /**
+     * Complete with an error
+     * @param error NetError
+     * @return False if already completed
+     */
+    boolean fail(NetError error) {
+        return setOutcome(new Outcome<T>(null, error));
+    }
+
+    /**
+     * Store the outcome, release waiting threads and trigger callbacks
+     * @param result Outcome
+     * @return False if already completed
+     */
+    private boolean setOutcome(Outcome<T> result) {
+        if (!outcome.compareAndSet(null, result)) {
+            return false;
+        }
+        done.countDown();
+        for (Callback<T> callback : callbacks) {
+            // Whoever removes the callback triggers it, addCallback may race for it
+            if (callbacks.remove(callback)) {
+                notify(callback, result);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Trigger a callback
+     * @param callback Callback
+     * @param result Outcome
+     */
+    private void notify(Callback<T> callback, Outcome<T> result) {
+        if (result.error == null) {
+            callback.onSuccess(result.value);
+        } else {
+            callback.onFailure(result.error);
+        }
+    }
+
+    /**
+     * Register a completion callback, triggered immediately if already completed
+     * @param callback Callback
+     * @return This future
+     */
+    public NetFuture<T> addCallback(Callback<T> callback) {
+        callbacks.add(callback);
+        Outcome<T> result = outcome.get();
+        if (result != null && callbacks.remove(callback)) {
+            notify(callback, result);
+        }
+        return this;
+    }
+
+    /**
+     * Chain a dependent stage started with the result of this one
+     * @param continuation Next stage factory
+     * @param <U> Next stage result type
+     * @return Future of the next stage, fails if either stage fails
+     */
+    public <U> NetFuture<U> thenCompose(final Continuation<T, U> continuation) {
+        final NetFuture<U> result = new NetFuture<>();
+        final AtomicReference<NetFuture<U>> next = new AtomicReference<>();
+        result.setOnCancel(new Runnable() {
+            @Override
+            public void run() {
+                cancel(true);
+                NetFuture<U> stage = next.get();
+                if (stage != null) {
+                    stage.cancel(true);
+                }
+            }
+        });
+        addCallback(new Callback<T>() {
+            @Override
+            public void onSuccess(T value) {
+                if (result.isDone()) {
+                    return;
+                }
+                NetFuture<U> stage = continuation.then(value);
+                next.set(stage);
+                stage.addCallback(new Callback<U>() {
+                    @Override
+                    public void onSuccess(U value) {
+                        result.complete(value);
+                    }
+
+                    @Override
+                    public void onFailure(NetError error) {
+                        result.fail(error);
+                    }
+                });
+            }
+
+            @Override
+            public void onFailure(NetError error) {
+                result.fail(error);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Combine futures into one completing when all of them succeed
+     * @param futures Futures
+     * @param <T> Result type
+     * @return Future of the results, in the same order, fails as soon as one of them fails
+     */
+    @SafeVarargs
+    public static <T> NetFuture<List<T>> allOf(NetFuture<T>... futures) {
+        List<NetFuture<T>> list = new ArrayList<>(futures.length);
+        for (NetFuture<T> future : futures) {
+            list.add(future);
+        }
+        return allOf(list);
+    }
+
+    /**
+     * Combine futures into one completing when all of them succeed
+     * @param futures Futures
+     * @param <T> Result type
+     * @return Future of the results, in the same order, fails as soon as one of them fails
+     */
+    public static <T> NetFuture<List<T>> allOf(final List<NetFuture<T>> futures) {
+        final NetFuture<List<T>> result = new NetFuture<>();
+        final List<T> values = new ArrayList<>(Collections.<T>nCopies(futures.size(), null));
+        final AtomicInteger remaining = new AtomicInteger(futures.size());
+        result.setOnCancel(new Runnable() {
+            @Override
+            public void run() {
+                for (NetFuture<T> future : futures) {
+                    future.cancel(true);
+                }
+            }
+        });
+        if (futures.isEmpty()) {
+            result.complete(values);
+            return result;
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            final int index = i;
+            futures.get(i).addCallback(new Callback<T>() {
+                @Override
+                public void onSuccess(T value) {
+                    synchronized (values) {
+                        values.set(index, value);
+                    }
+                    if (remaining.decrementAndGet() == 0) {
+                        synchronized (values) {
+                            result.complete(Collections.unmodifiableList(values));
+                        }
+                    }
+                }
+
+                @Override
+                public void onFailure(NetError error) {
+                    result.fail(error);
+                }
+            });
+        }
+        return result;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (!fail(new NetError(NetErrorStatus.CANCELED, null))) {
+            return false;
+        }
+        Runnable action = onCancel;
+        if (action != null) {
+            action.run();
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        Outcome<T> result = outcome.get();
+        return result != null && result.error != null
+                && result.error.getStatus() == NetErrorStatus.CANCELED;
+    }
+
+    @Override
+    public boolean isDone() {
+        return outcome.get() != null;
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        checkNotMainThread();
+        done.await();
+        return getNow();
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        checkNotMainThread();
+        if (!done.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return getNow();
+    }
+
+    /**
+     * Read the completed outcome
+     * @return Result
+     * @throws ExecutionException Wrapping a {@link NetRequestException} on failure
+     */
+    private T getNow() throws ExecutionException {
+        Outcome<T> result = outcome.get();
+        if (result.error == null) {
+            return result.value;
+        }
+        if (result.error.getStatus() == NetErrorStatus.CANCELED) {
+            throw new CancellationException();
+        }
+        throw new ExecutionException(new NetRequestException(result.error));
+    }
+
+    /**
+     * Blocking on the main thread would deadlock since results are delivered there
+     */
+    private void checkNotMainThread() {
+        if (!isDone() && Looper.myLooper() != null && Looper.myLooper() == Looper.getMainLooper()) {
+            throw new IllegalStateException("NetFuture.get() called on the main thread");
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.github.thunder413.netrequest;
+
+import java.util.Arrays;
+
+/**
+ * NetLatencyTracker
+ * <p>Keeps the last {@link #WINDOW} response times of a host to estimate latency percentiles,
+ * used to pick the delay after which a hedged request is sent.
+ * </p>
+ * @author Thunder413
+ * @version 1.4
+ */
+@SuppressWarnings("WeakerAccess")
+public class NetLatencyTracker {
+    /**
+     * Number of samples kept
+     */
+    public static final int WINDOW = 100;
+    /**
+     * Number of samples required before a percentile is reported
+     */
+    public static final int MIN_SAMPLES = 20;
+    /**
+     * Samples in nanoseconds
+     */
+    private final long[] samples = new long[WINDOW];
+    /**
+     * Total number of samples recorded
+     */
+    private long count;
+
+    /**
+     * Record a response time
+     * @param nanos Response time in nanoseconds
+     */
+    public synchronized void record(long nanos) {
+        samples[(int) (count % WINDOW)] = nanos;
+        count++;
+    }
+
+    /**
+     * Get a percentile of the recorded response times
+     * @param percentile Percentile between 0 and 100
+     * @return Response time in milliseconds, 0 while fewer than {@link #MIN_SAMPLES} were recorded
+     */
+    public long getPercentile(int percentile) {
+        long[] copy;
+        synchronized (this) {
+            if (count < MIN_SAMPLES) {
+                return 0;
+            }
+            copy = Arrays.copyOf(samples, (int) Math.min(count, WINDOW));
+        }
+        Arrays.sort(copy);
+        int index = (int) Math.ceil(percentile / 100.0 * copy.length) - 1;
+        return copy[Math.max(0, Math.min(copy.length - 1, index))] / 1000000L;
+    }
+}
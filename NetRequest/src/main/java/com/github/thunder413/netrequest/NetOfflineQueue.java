@@ -0,0 +1,543 @@
+package com.github.thunder413.netrequest;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * NetOfflineQueue
+ * <p>Durable queue of the requests loaded while no network was available. Requests flagged
+ * with {@link NetRequest#setQueueWhenOffline(boolean)} are appended to a log in the files
+ * directory of the application instead of failing, and replayed in order with a bounded
+ * number of them in flight once the network is back, including after a restart.
+ * </p>
+ * <p>The log is append-only, one JSON line per event: a request is added, a request is done.
+ * It is rewritten with the pending requests only once done events outnumber them. Disk writes
+ * happen on a dedicated thread, in order.
+ * </p>
+ * <p>The method, the uri, the parameters, the response type, the priority and a String tag
+ * are kept, listeners are not: replayed requests report to the listener of the queue.
+ * </p>
+ * @author Thunder413
+ * @version 1.4
+ * @see NetRequestManager#setOfflineQueue(NetOfflineQueue)
+ */
+@SuppressWarnings("WeakerAccess")
+public class NetOfflineQueue {
+    /**
+     * Log tag
+     */
+    private static final String LOG_TAG = "NetOfflineQueue";
+    /**
+     * Log file name
+     */
+    public static final String FILE_NAME = "netrequest-offline.log";
+    /**
+     * Default number of replayed requests in flight at the same time
+     */
+    public static final int DEFAULT_MAX_CONCURRENCY = 4;
+    /**
+     * Minimum number of done events before the log is compacted
+     */
+    private static final int COMPACT_THRESHOLD = 32;
+
+    /**
+     * Log line
+     */
+    private static final class Record {
+        String op;
+        long id;
+        String method;
+        String uri;
+        String type;
+        String priority;
+        String tag;
+        String[][] parameters;
+    }
+
+    /**
+     * Gson instance
+     */
+    private final Gson gson = new Gson();
+    /**
+     * Application context, used to build replayed requests
+     */
+    private final Context context;
+    /**
+     * Log file
+     */
+    private final File file;
+    /**
+     * Thread writing the log
+     */
+    private final ExecutorService io = Executors.newSingleThreadExecutor(NetExecutors.threadFactory("NetRequest offline queue"));
+    /**
+     * Main thread handler, replays are started from the main thread
+     */
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    /**
+     * Pending requests by id, in insertion order
+     */
+    private final Map<Long, Record> pending = new LinkedHashMap<>();
+    /**
+     * Done events in the log
+     */
+    private int doneCount;
+    /**
+     * Next request id
+     */
+    private long nextId;
+    /**
+     * Whether or not a replay is running
+     */
+    private boolean replaying;
+    /**
+     * Number of replayed requests in flight at the same time
+     */
+    private volatile int maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+    /**
+     * Listener of replayed requests
+     */
+    private volatile OnNetBatchResponse listener;
+    /**
+     * Replay the queue when the network is back
+     */
+    private final NetConnectivityMonitor.Listener connectivityListener = new NetConnectivityMonitor.Listener() {
+        @Override
+        public void onConnectivityChanged(boolean connected) {
+            if (connected) {
+                replay();
+            }
+        }
+    };
+
+    /**
+     * Constructor, the log left by a previous run is read in the background
+     * @param context Context, its application context is kept
+     */
+    public NetOfflineQueue(Context context) {
+        Context applicationContext = context.getApplicationContext();
+        this.context = (applicationContext != null) ? applicationContext : context;
+        this.file    = new File(this.context.getFilesDir(), FILE_NAME);
+        io.execute(new Runnable() {
+            @Override
+            public void run() {
+                read();
+            }
+        });
+    }
+
+    /**
+     * Print a debug message
+     * @param message Message to print
+     */
+    private void debug(String message){
+        if(!NetRequestManager.getInstance().isDebug()){
+            return;
+        }
+        Log.d(LOG_TAG,message);
+    }
+
+    /**
+     * Set the number of replayed requests in flight at the same time
+     * @param maxConcurrency Limit, default {@link #DEFAULT_MAX_CONCURRENCY}
+     */
+    public NetOfflineQueue setMaxConcurrency(int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("max < 1: " + maxConcurrency);
+        }
+        this.maxConcurrency = maxConcurrency;
+        return this;
+    }
+
+    /**
+     * Set the listener of replayed requests
+     * @param listener OnNetBatchResponse, triggered on the main thread
+     */
+    public NetOfflineQueue setOnReplayListener(OnNetBatchResponse listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Get the number of requests waiting for the network
+     * @return Count
+     */
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    /**
+     * Get the application context
+     * @return Context
+     */
+    Context getContext() {
+        return context;
+    }
+
+    /**
+     * Listener to register on the connectivity monitor
+     * @return Listener
+     */
+    NetConnectivityMonitor.Listener getConnectivityListener() {
+        return connectivityListener;
+    }
+
+    /**
+     * Persist a request
+     * @param request NetRequest
+     */
+    void add(NetRequest request) {
+        final Record record = new Record();
+        record.op       = "add";
+        record.method   = request.getMethod().name();
+        record.uri      = request.getRequestUri();
+        record.type     = request.getRequestDataType().name();
+        record.priority = request.getPriority().name();
+        record.tag      = (request.getTag() instanceof String) ? (String) request.getTag() : null;
+        List<NetParameter> parameters = request.getParameterList();
+        record.parameters = new String[parameters.size()][];
+        for (int i = 0; i < parameters.size(); i++) {
+            NetParameter parameter = parameters.get(i);
+            record.parameters[i] = new String[]{parameter.getName(), String.valueOf(parameter.getValue())};
+        }
+        synchronized (this) {
+            record.id = nextId++;
+            pending.put(record.id, record);
+        }
+        debug("Add >> " + record.uri);
+        io.execute(new Runnable() {
+            @Override
+            public void run() {
+                append(record);
+            }
+        });
+    }
+
+    /**
+     * Replay pending requests if the network is available, a replay already running is
+     * not interrupted
+     */
+    public void replay() {
+        // Queued behind the initial read of the log
+        io.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<Record> records;
+                if (!NetRequestManager.getInstance().getConnectivityMonitor(context).isConnected()) {
+                    return;
+                }
+                synchronized (NetOfflineQueue.this) {
+                    if (replaying || pending.isEmpty()) {
+                        return;
+                    }
+                    replaying = true;
+                    records = new ArrayList<>(pending.values());
+                }
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        start(records);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Start a batch replaying records, on the main thread
+     * @param records Records
+     */
+    private void start(List<Record> records) {
+        debug("Replay >> " + records.size() + " requests");
+        final Map<NetRequest, Long> ids = new IdentityHashMap<>();
+        NetRequestBatch batch = new NetRequestBatch().setMaxConcurrency(maxConcurrency);
+        for (Record record : records) {
+            NetRequest request = toRequest(record);
+            ids.put(request, record.id);
+            batch.add(request);
+        }
+        batch.setOnBatchResponseListener(new OnNetBatchResponse() {
+            @Override
+            public void onNetRequestCompleted(NetRequest request, NetResponse response) {
+                done(ids.get(request));
+                OnNetBatchResponse listener = NetOfflineQueue.this.listener;
+                if (listener != null) {
+                    listener.onNetRequestCompleted(request, response);
+                }
+            }
+
+            @Override
+            public void onNetRequestError(NetRequest request, NetError error) {
+                if (isDefinitive(error)) {
+                    done(ids.get(request));
+                }
+                OnNetBatchResponse listener = NetOfflineQueue.this.listener;
+                if (listener != null) {
+                    listener.onNetRequestError(request, error);
+                }
+            }
+
+            @Override
+            public void onNetBatchCompleted(List<NetBatchResult> results) {
+                boolean added;
+                synchronized (NetOfflineQueue.this) {
+                    replaying = false;
+                    // Requests persisted while replaying have not been tried yet
+                    added = hasNewerThan(ids.values());
+                }
+                OnNetBatchResponse listener = NetOfflineQueue.this.listener;
+                if (listener != null) {
+                    listener.onNetBatchCompleted(results);
+                }
+                if (added) {
+                    replay();
+                }
+            }
+        });
+        batch.start();
+    }
+
+    /**
+     * Check if a pending request is not part of the given ids
+     * @param ids Replayed ids
+     * @return True if a request has been added since
+     */
+    private boolean hasNewerThan(Collection<Long> ids) {
+        for (Long id : pending.keySet()) {
+            if (!ids.contains(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tell whether or not a failed replay has to be dropped, requests that did not reach
+     * the server, were refused by an overloaded one (5xx, 429) or rejected by a saturated
+     * dispatcher are kept for the next replay
+     * @param error Error
+     * @return True if the request is done
+     */
+    static boolean isDefinitive(NetError error) {
+        switch (error.getStatus()) {
+            case SERVER_ERROR:
+                int code = error.getResponseCode();
+                return code != 0 && code < 500 && code != 429;
+            case CONNECTION_ERROR:
+            case REQUEST_ERROR:
+            case BAD_GATEWAY:
+            case TIMEOUT:
+            case CIRCUIT_OPEN:
+            case QUEUE_FULL:
+            case CANCELED:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Build a request from a record
+     * @param record Record
+     * @return NetRequest
+     */
+    private NetRequest toRequest(Record record) {
+        NetRequest request = new NetRequest(context);
+        request.setCancelOnContextDie(false);
+        request.setRequestMethod(RequestMethod.valueOf(record.method));
+        request.setRequestDataType(RequestDataType.valueOf(record.type));
+        request.setPriority(RequestPriority.valueOf(record.priority));
+        if (record.tag != null) {
+            request.setTag(record.tag);
+        }
+        if (record.parameters != null) {
+            for (String[] parameter : record.parameters) {
+                request.addParameter(parameter[0], parameter[1]);
+            }
+        }
+        request.setRequestUri(record.uri);
+        return request;
+    }
+
+    /**
+     * Mark a request as done
+     * @param id Request id
+     */
+    private void done(Long id) {
+        if (id == null) {
+            return;
+        }
+        synchronized (this) {
+            if (pending.remove(id) == null) {
+                return;
+            }
+        }
+        final Record record = new Record();
+        record.op = "done";
+        record.id = id;
+        io.execute(new Runnable() {
+            @Override
+            public void run() {
+                append(record);
+                boolean compact;
+                synchronized (NetOfflineQueue.this) {
+                    doneCount++;
+                    compact = doneCount >= COMPACT_THRESHOLD && doneCount > pending.size();
+                }
+                if (compact) {
+                    compact();
+                }
+            }
+        });
+    }
+
+    /**
+     * Read the log left by a previous run, on the io thread
+     */
+    private void read() {
+        if (!file.exists()) {
+            return;
+        }
+        Map<Long, Record> records = new LinkedHashMap<>();
+        int done = 0;
+        long maxId = -1;
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Record record;
+                try {
+                    record = gson.fromJson(line, Record.class);
+                } catch (JsonParseException e) {
+                    // Torn write at the end of the log
+                    debug("Read >> Skipping invalid line");
+                    continue;
+                }
+                if (record == null) {
+                    continue;
+                }
+                maxId = Math.max(maxId, record.id);
+                if ("add".equals(record.op)) {
+                    records.put(record.id, record);
+                } else if ("done".equals(record.op)) {
+                    records.remove(record.id);
+                    done++;
+                }
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Read >> Unable to read offline queue", e);
+        } finally {
+            close(reader);
+        }
+        boolean rewrite;
+        synchronized (this) {
+            // Requests added before the log was read keep their place after the older ones
+            Map<Long, Record> added = new LinkedHashMap<>(pending);
+            rewrite = !added.isEmpty() || done >= COMPACT_THRESHOLD;
+            pending.clear();
+            pending.putAll(records);
+            long offset = maxId + 1;
+            for (Record record : added.values()) {
+                record.id += offset;
+                pending.put(record.id, record);
+            }
+            nextId    += offset;
+            doneCount  = done;
+        }
+        debug("Read >> " + records.size() + " pending requests");
+        if (rewrite) {
+            // Ids of requests added meanwhile changed or the log is mostly done events
+            compact();
+        }
+    }
+
+    /**
+     * Append a record to the log and sync it to disk, on the io thread
+     * @param record Record
+     */
+    private void append(Record record) {
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(file, true);
+            Writer writer = new OutputStreamWriter(out, "UTF-8");
+            writer.write(gson.toJson(record));
+            writer.write('\n');
+            writer.flush();
+            out.getFD().sync();
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Append >> Unable to write offline queue", e);
+        } finally {
+            close(out);
+        }
+    }
+
+    /**
+     * Rewrite the log with the pending requests only, on the io thread
+     */
+    private void compact() {
+        List<Record> records;
+        synchronized (this) {
+            records   = new ArrayList<>(pending.values());
+            doneCount = 0;
+        }
+        debug("Compact >> " + records.size() + " pending requests");
+        File temp = new File(file.getPath() + ".tmp");
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(temp, false);
+            Writer writer = new OutputStreamWriter(out, "UTF-8");
+            for (Record record : records) {
+                writer.write(gson.toJson(record));
+                writer.write('\n');
+            }
+            writer.flush();
+            out.getFD().sync();
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Compact >> Unable to write offline queue", e);
+            close(out);
+            return;
+        }
+        close(out);
+        if (!temp.renameTo(file)) {
+            Log.e(LOG_TAG, "Compact >> Unable to replace offline queue");
+        }
+    }
+
+    /**
+     * Close a stream quietly
+     * @param closeable Stream
+     */
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Ignored
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.github.thunder413.netrequest;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * NetRateLimiter
+ * <p>Token bucket limiting the rate at which requests leave the queue for a host. The
+ * bucket holds up to {@code burst} tokens and refills at {@code requestsPerSecond}.
+ * </p>
+ * <p>The bucket is stored as a single theoretical arrival time updated with compare and
+ * set: taking a token pushes it one emission interval forward, and a token is available as
+ * long as it is less than {@code burst} intervals ahead of now. Acquiring a token is lock
+ * free and never blocks.
+ * </p>
+ * @author Thunder413
+ * @version 1.4
+ */
+@SuppressWarnings("WeakerAccess")
+public class NetRateLimiter {
+    /**
+     * Requests per second
+     */
+    private final double requestsPerSecond;
+    /**
+     * Bucket size
+     */
+    private final int burst;
+    /**
+     * Time between two tokens in nanoseconds
+     */
+    private final long interval;
+    /**
+     * Time the bucket would be empty at, in nanoseconds
+     */
+    private final AtomicLong theoreticalArrival;
+
+    /**
+     * Constructor
+     * @param requestsPerSecond Refill rate, greater than 0
+     * @param burst Bucket size, at least 1
+     */
+    public NetRateLimiter(double requestsPerSecond, int burst) {
+        if (requestsPerSecond <= 0) {
+            throw new IllegalArgumentException("requestsPerSecond <= 0: " + requestsPerSecond);
+        }
+        if (burst < 1) {
+            throw new IllegalArgumentException("burst < 1: " + burst);
+        }
+        this.requestsPerSecond  = requestsPerSecond;
+        this.burst              = burst;
+        this.interval           = Math.max(1L, (long) (1000000000L / requestsPerSecond));
+        this.theoreticalArrival = new AtomicLong(System.nanoTime() - burst * interval);
+    }
+
+    /**
+     * Get refill rate
+     * @return Requests per second
+     */
+    public double getRequestsPerSecond() {
+        return requestsPerSecond;
+    }
+
+    /**
+     * Get bucket size
+     * @return Burst
+     */
+    public int getBurst() {
+        return burst;
+    }
+
+    /**
+     * Take a token if one is available
+     * @return 0 if a token has been taken, otherwise the time in nanoseconds until the next one
+     */
+    public long tryAcquire() {
+        long now = System.nanoTime();
+        while (true) {
+            long current = theoreticalArrival.get();
+            long next    = Math.max(current, now - burst * interval) + interval;
+            long wait    = next - now;
+            if (wait > 0) {
+                return wait;
+            }
+            if (theoreticalArrival.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+}
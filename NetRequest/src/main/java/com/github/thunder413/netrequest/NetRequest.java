@@ -1,12 +1,17 @@
 package com.github.thunder413.netrequest;
 
 import android.content.Context;
-import android.net.ConnectivityManager;
 import android.net.Uri;
+import android.os.Looper;
 import android.util.Log;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 /**
  * NetRequest
  *  <p>
@@ -34,7 +39,7 @@ public class NetRequest {
     /**
      * NetRequest context
      */
-    private final Context context;
+    private final WeakReference<Context> context;
     /**
      * Application context
      */
@@ -71,17 +76,72 @@ public class NetRequest {
      * NetRequest tag
      */
     private Object tag;
+    /**
+     * Whether or not the tag has been set, the default one is not indexed
+     */
+    private boolean tagSet;
     /**
      * Whether or not to cancel app when context is diying
      */
     private boolean cancelOnContextDie;
+    /**
+     * Scheduling priority
+     * @see RequestPriority
+     */
+    private volatile RequestPriority priority = RequestPriority.NORMAL;
+    /**
+     * Retry policy, null to use the manager one
+     */
+    private RetryPolicy retryPolicy;
+    /**
+     * Key computed when the request was last queued
+     */
+    private volatile NetRequestKey key;
+    /**
+     * Whether or not the request is persisted and replayed later when loaded without network
+     */
+    private boolean queueWhenOffline;
+    /**
+     * Registry entry the request waits for, null when not queued
+     */
+    private volatile NetRequestEntry entry;
+    /**
+     * Whether or not a duplicate request may be sent when the response is slow
+     */
+    private boolean hedgingEnabled;
+    /**
+     * Delay before the duplicate request is sent in milliseconds, 0 to use the p95 latency of the host
+     */
+    private long hedgeDelay;
+    /**
+     * Executor triggering the response listener, null to use the one of the manager
+     */
+    private volatile Executor deliveryExecutor;
+    /**
+     * Total time allowed from load to delivery in milliseconds, 0 to use the manager one
+     */
+    private long timeout;
+    /**
+     * Connect timeout in milliseconds, 0 to use the manager one
+     */
+    private int connectTimeout;
+    /**
+     * Read timeout in milliseconds, 0 to use the manager one
+     */
+    private int readTimeout;
+    /**
+     * Internal completion listeners, triggered after the response listener and
+     * also notified with {@link NetErrorStatus#CANCELED} when the request is cancelled
+     */
+    private final List<OnNetResponse> completionListeners = new CopyOnWriteArrayList<>();
     /**
      * Constructor
      * @param context Context
      */
     public NetRequest(Context context){
-        this.context = context;
-        applicationContext = context.getApplicationContext();
+        this.context = new WeakReference<>(context);
+        Context application = context.getApplicationContext();
+        applicationContext = (application != null) ? application : context;
         // SetDefault RequestDataType
         setRequestDataType(RequestDataType.TEXT);
         // SetDefaultMethod
@@ -92,16 +152,12 @@ public class NetRequest {
         tag = String.valueOf(System.currentTimeMillis());
     }
     /**
-     * Get active network
-     * @return NetworkInfo Object
+     * Check if a network is available, the state is cached by the connectivity monitor
+     * @return True if connected
+     * @see NetRequestManager#setConnectivityMonitor(NetConnectivityMonitor)
      */
     private boolean isNetworkActive() {
-        if(applicationContext != null) {
-            ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
-            return cm.getActiveNetworkInfo() != null;
-        } else {
-            return false;
-        }
+        return NetRequestManager.getInstance().getConnectivityMonitor(applicationContext).isConnected();
     }
     /**
      * Print a debug message
@@ -130,24 +186,122 @@ public class NetRequest {
      */
     private void dispatchError(NetErrorStatus error) {
         hasError = true;
+        deliverError(new NetError(error, tag));
+    }
+    /**
+     * Deliver a response to the response listener then to completion listeners
+     * @param response NetResponse
+     */
+    void deliverResponse(NetResponse response) {
+        if(listener != null) {
+            listener.onNetResponseCompleted(response);
+        }
+        for (OnNetResponse completionListener : completionListeners) {
+            completionListener.onNetResponseCompleted(response);
+        }
+    }
+    /**
+     * Deliver an error to the response listener then to completion listeners
+     * @param error NetError
+     */
+    void deliverError(NetError error) {
         if(listener != null) {
-            listener.onNetResponseError(new NetError(error, tag));
+            listener.onNetResponseError(error);
+        }
+        notifyCompletionError(error);
+    }
+    /**
+     * Tell completion listeners the request has been cancelled, the response
+     * listener is not triggered on cancel
+     */
+    void notifyCancelled() {
+        notifyCompletionError(new NetError(NetErrorStatus.CANCELED, tag));
+    }
+    /**
+     * Deliver an error to completion listeners only
+     * @param error NetError
+     */
+    private void notifyCompletionError(NetError error) {
+        for (OnNetResponse completionListener : completionListeners) {
+            completionListener.onNetResponseError(error);
         }
     }
     /**
-     * Get context
-     * @return Context
+     * Add an internal completion listener
+     * @param completionListener OnNetResponse
+     */
+    void addCompletionListener(OnNetResponse completionListener) {
+        completionListeners.add(completionListener);
+    }
+    /**
+     * Remove an internal completion listener
+     * @param completionListener OnNetResponse
+     */
+    void removeCompletionListener(OnNetResponse completionListener) {
+        completionListeners.remove(completionListener);
+    }
+    /**
+     * Get context, it is weakly referenced so that a request does not keep a destroyed
+     * Activity in memory
+     * @return Context, null once collected
      */
     public Context getContext(){
-        return this.context;
+        return this.context.get();
+    }
+
+    /**
+     * Get the registry entry the request waits for
+     * @return NetRequestEntry, null when not queued
+     */
+    NetRequestEntry getEntry() {
+        return entry;
+    }
+
+    synchronized void setEntry(NetRequestEntry entry) {
+        this.entry = entry;
+    }
+
+    /**
+     * Get the key computed when the request was last queued, identical requests have the
+     * same key
+     * @return NetRequestKey, null if never queued
+     */
+    public NetRequestKey getKey() {
+        return key;
+    }
+
+    void setKey(NetRequestKey key) {
+        this.key = key;
+    }
+
+    /**
+     * Forget the registry entry if it is still the given one
+     * @param expected NetRequestEntry
+     * @return True if cleared
+     */
+    synchronized boolean clearEntry(NetRequestEntry expected) {
+        if (entry != expected) {
+            return false;
+        }
+        entry = null;
+        return true;
     }
 
     /**
-     * Set Tag
+     * Set Tag, requests can be cancelled by tag with {@link NetRequestManager#cancelAll(Object)}
      * @param tag Object
      */
     public void setTag(Object tag) {
-        this.tag = tag;
+        this.tag    = tag;
+        this.tagSet = true;
+    }
+
+    /**
+     * Tell whether or not the tag has been set, only such requests are indexed by tag
+     * @return True|False
+     */
+    boolean hasTag() {
+        return tagSet;
     }
 
     /**
@@ -172,6 +326,166 @@ public class NetRequest {
         this.method = (method == null) ? RequestMethod.GET:method;
     }
 
+    /**
+     * Set request priority
+     * <p>Can be changed while the request is queued, it is then moved in the queue
+     * accordingly. It has no effect once the request has been started</p>
+     * @param priority RequestPriority
+     */
+    public void setPriority(RequestPriority priority) {
+        this.priority = (priority == null) ? RequestPriority.NORMAL : priority;
+        NetRequestManager.getInstance().updatePriority(this);
+    }
+
+    /**
+     * Get request priority
+     * @return RequestPriority
+     */
+    public RequestPriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Set retry policy
+     * @param retryPolicy RetryPolicy, null to use the one of the manager
+     * @see NetRequestManager#setRetryPolicy(RetryPolicy)
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Get retry policy
+     * @return RetryPolicy, null if the manager one is used
+     */
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Enable / Disable hedging, when enabled and no response arrived after the hedge delay a
+     * duplicate request is sent and the first response wins. Only applies to GET requests
+     * and within the budget set with {@link NetRequestManager#setHedgeBudget(float)}
+     * @param hedgingEnabled State
+     */
+    public void setHedgingEnabled(boolean hedgingEnabled) {
+        this.hedgingEnabled = hedgingEnabled;
+    }
+
+    /**
+     * Check if hedging is enabled
+     * @return State
+     */
+    public boolean isHedgingEnabled() {
+        return hedgingEnabled;
+    }
+
+    /**
+     * Set the delay before a duplicate request is sent
+     * @param hedgeDelay Delay in milliseconds, 0 to use the p95 latency of the host (default)
+     */
+    public void setHedgeDelay(long hedgeDelay) {
+        this.hedgeDelay = Math.max(0, hedgeDelay);
+    }
+
+    /**
+     * Get the delay before a duplicate request is sent
+     * @return Delay in milliseconds, 0 if the p95 latency of the host is used
+     */
+    public long getHedgeDelay() {
+        return hedgeDelay;
+    }
+
+    /**
+     * Set the executor triggering the response listener of this request, e.g.
+     * {@link NetDelivery#direct()} when the result is handed to another worker anyway
+     * @param deliveryExecutor Executor, null to use the one of the manager
+     * @see NetRequestManager#setDeliveryExecutor(Executor)
+     */
+    public void setDeliveryExecutor(Executor deliveryExecutor) {
+        this.deliveryExecutor = deliveryExecutor;
+    }
+
+    /**
+     * Get the executor triggering the response listener of this request
+     * @return Executor, null if the one of the manager is used
+     */
+    public Executor getDeliveryExecutor() {
+        return deliveryExecutor;
+    }
+
+    /**
+     * Persist the request when it is loaded without network, it is then performed once the
+     * network is back and reported to the listener of the offline queue. The response listener
+     * is triggered with {@link NetErrorStatus#OFFLINE_QUEUED}. Meant for writes that must not
+     * be lost, requires {@link NetRequestManager#setOfflineQueue(NetOfflineQueue)}
+     * @param queueWhenOffline State
+     */
+    public void setQueueWhenOffline(boolean queueWhenOffline) {
+        this.queueWhenOffline = queueWhenOffline;
+    }
+
+    /**
+     * Check if the request is persisted when loaded without network
+     * @return State
+     */
+    public boolean isQueueWhenOffline() {
+        return queueWhenOffline;
+    }
+
+    /**
+     * Set the total time allowed for the request, it covers the time spent waiting in the
+     * queue, connecting, sending, receiving and parsing. Once elapsed the request fails with
+     * {@link NetErrorStatus#TIMEOUT}
+     * @param timeout Timeout in milliseconds, 0 to use the one of the manager
+     * @see NetRequestManager#setTimeout(long)
+     */
+    public void setTimeout(long timeout) {
+        this.timeout = Math.max(0, timeout);
+    }
+
+    /**
+     * Get the total time allowed for the request
+     * @return Timeout in milliseconds, 0 if the manager one is used
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Set the connect timeout
+     * @param connectTimeout Timeout in milliseconds, 0 to use the one of the manager
+     * @see NetRequestManager#setConnectTimeout(int)
+     */
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = Math.max(0, connectTimeout);
+    }
+
+    /**
+     * Get the connect timeout
+     * @return Timeout in milliseconds, 0 if the manager one is used
+     */
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * Set the read timeout, the maximum time to wait for data once connected
+     * @param readTimeout Timeout in milliseconds, 0 to use the one of the manager
+     * @see NetRequestManager#setReadTimeout(int)
+     */
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = Math.max(0, readTimeout);
+    }
+
+    /**
+     * Get the read timeout
+     * @return Timeout in milliseconds, 0 if the manager one is used
+     */
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
     /**
      * Set RequestDataType
      * @param requestDataType RequestDataType
@@ -221,12 +535,97 @@ public class NetRequest {
             return;
         }
         if(!isNetworkActive()) {
+            NetOfflineQueue offlineQueue = NetRequestManager.getInstance().getOfflineQueue();
+            if(queueWhenOffline && offlineQueue != null) {
+                debug("Offline >> Persisting uri >> "+uri);
+                offlineQueue.add(this);
+                dispatchError(NetErrorStatus.OFFLINE_QUEUED);
+                return;
+            }
             dispatchError(NetErrorStatus.CONNECTION_ERROR);
             return;
         }
         debug("Loading uri >> "+uri);
         NetRequestManager.getInstance().addToQueue(this);
     }
+    /**
+     * Perform the request on the calling thread and wait for the response
+     * @param uri Url string
+     * @return NetResponse
+     * @throws NetRequestException When the request fails
+     * @see #execute()
+     */
+    public NetResponse execute(String uri) throws NetRequestException {
+        setRequestUri(uri);
+        return execute();
+    }
+    /**
+     * Perform the request on the calling thread and wait for the response
+     * <p>Meant for callers already running on a background thread, the request goes through
+     * the same build, send and parse steps as {@link #load()} but is neither queued nor
+     * delivered on the main thread. The response listener is not triggered</p>
+     * @return NetResponse
+     * @throws NetRequestException When the request fails, carrying the error status
+     * @throws IllegalStateException When called from the main thread
+     */
+    public NetResponse execute() throws NetRequestException {
+        if(Looper.myLooper() != null && Looper.myLooper() == Looper.getMainLooper()) {
+            throw new IllegalStateException("NetRequest.execute() called on the main thread");
+        }
+        if (uri == null || uri.isEmpty()) {
+            throw new NetRequestException(new NetError(NetErrorStatus.INVALID_URI_ERROR, tag));
+        }
+        if(!isNetworkActive()) {
+            throw new NetRequestException(new NetError(NetErrorStatus.CONNECTION_ERROR, tag));
+        }
+        debug("Executing uri >> "+uri);
+        return NetRequestManager.getInstance().execute(this);
+    }
+    /**
+     * Load uri and get the response as a future
+     * @param uri Url string
+     * @return NetFuture
+     * @see #loadAsync()
+     */
+    public NetFuture<NetResponse> loadAsync(String uri) {
+        setRequestUri(uri);
+        return loadAsync();
+    }
+    /**
+     * Load the default uri and get the response as a future, the response listener
+     * if any is still triggered. Cancelling the future cancels this request
+     * @return NetFuture
+     */
+    public NetFuture<NetResponse> loadAsync() {
+        final NetFuture<NetResponse> future = new NetFuture<>();
+        if(hasError) {
+            future.fail(new NetError(NetErrorStatus.ERROR, tag));
+            return future;
+        }
+        final OnNetResponse completionListener = new OnNetResponse() {
+            @Override
+            public void onNetResponseCompleted(NetResponse response) {
+                removeCompletionListener(this);
+                future.complete(response);
+            }
+
+            @Override
+            public void onNetResponseError(NetError error) {
+                removeCompletionListener(this);
+                future.fail(error);
+            }
+        };
+        future.setOnCancel(new Runnable() {
+            @Override
+            public void run() {
+                removeCompletionListener(completionListener);
+                cancel();
+            }
+        });
+        addCompletionListener(completionListener);
+        load();
+        return future;
+    }
     /**
      * Set
      * @return Whether or not to cancel when context is dieing
@@ -259,6 +658,13 @@ public class NetRequest {
             addParameter(entry.getKey(), entry.getValue());
         }
     }
+    /**
+     * Get parameters
+     * @return Unmodifiable list
+     */
+    List<NetParameter> getParameterList() {
+        return Collections.unmodifiableList(parameters);
+    }
     /**
      * Get parameters
      * @return String serialized
@@ -297,5 +703,6 @@ public class NetRequest {
      */
     public void cancel(){
         NetRequestManager.getInstance().cancel(this);
+        notifyCancelled();
     }
 }
\ No newline at end of file
@@ -0,0 +1,339 @@
+package com.github.thunder413.netrequest;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * NetRequestBatch
+ * <p>
+ *     Executes a set of related requests with a bounded number of them in flight at the
+ *     same time. Each outcome is streamed to the {@link OnNetBatchResponse} listener as soon
+ *     as it is available, then a single aggregate callback reports the outcome and timing of
+ *     every request once all of them are done or the deadline elapsed. Requests still running
+ *     or not started when the deadline elapses are cancelled and reported with
+ *     {@link NetErrorStatus#TIMEOUT}.
+ * </p>
+ * <p>
+ *     The batch must be started from the main thread, the response listeners of the requests
+ *     themselves are still triggered. The batch listener is triggered on the main thread
+ *     whatever the delivery executor of the requests.
+ * </p>
+ * @author Thunder413
+ * @version 1.4
+ */
+@SuppressWarnings("WeakerAccess")
+public class NetRequestBatch {
+    /**
+     * Log tag
+     */
+    private static final String LOG_TAG = "NetRequestBatch";
+    /**
+     * Default number of requests in flight at the same time
+     */
+    public static final int DEFAULT_MAX_CONCURRENCY = 8;
+    /**
+     * Main thread handler used for the deadline
+     */
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    /**
+     * Requests
+     */
+    private final List<NetRequest> requests = new ArrayList<>();
+    /**
+     * Futures of started requests
+     */
+    private final List<NetFuture<NetResponse>> futures = new ArrayList<>();
+    /**
+     * Outcomes, by request index
+     */
+    private NetBatchResult[] results;
+    /**
+     * Start times, by request index
+     */
+    private long[] startTimes;
+    /**
+     * Number of requests in flight at the same time
+     */
+    private int maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+    /**
+     * Deadline in milliseconds after start, 0 for none
+     */
+    private long deadline;
+    /**
+     * Listener
+     */
+    private OnNetBatchResponse listener;
+    /**
+     * Index of the next request to start
+     */
+    private int next;
+    /**
+     * Requests in flight
+     */
+    private int running;
+    /**
+     * Requests done
+     */
+    private int completed;
+    /**
+     * Whether or not start has been called
+     */
+    private boolean started;
+    /**
+     * Whether or not the aggregate callback has been triggered
+     */
+    private boolean finished;
+    /**
+     * Whether or not requests are being started, guards against re-entrant starts
+     * when a request fails synchronously
+     */
+    private boolean launching;
+    /**
+     * Deadline action
+     */
+    private final Runnable expire = new Runnable() {
+        @Override
+        public void run() {
+            onDeadline();
+        }
+    };
+
+    /**
+     * Print a debug message
+     * @param message Message to print
+     */
+    private void debug(String message){
+        if(!NetRequestManager.getInstance().isDebug()){
+            return;
+        }
+        Log.d(LOG_TAG,message);
+    }
+
+    /**
+     * Add a request to the batch
+     * @param request NetRequest with its uri already set
+     */
+    public NetRequestBatch add(NetRequest request) {
+        checkNotStarted();
+        requests.add(request);
+        return this;
+    }
+
+    /**
+     * Add requests to the batch
+     * @param requests NetRequests with their uri already set
+     */
+    public NetRequestBatch addAll(Collection<NetRequest> requests) {
+        checkNotStarted();
+        this.requests.addAll(requests);
+        return this;
+    }
+
+    /**
+     * Get the requests of the batch
+     * @return Unmodifiable list
+     */
+    public List<NetRequest> getRequests() {
+        return Collections.unmodifiableList(requests);
+    }
+
+    /**
+     * Set the number of requests in flight at the same time
+     * @param maxConcurrency Limit, at least 1
+     */
+    public NetRequestBatch setMaxConcurrency(int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("max < 1: " + maxConcurrency);
+        }
+        this.maxConcurrency = maxConcurrency;
+        return this;
+    }
+
+    /**
+     * Set a deadline after which remaining requests are cancelled and the batch completes
+     * @param millis Deadline in milliseconds after start, 0 for none
+     */
+    public NetRequestBatch setDeadline(long millis) {
+        this.deadline = millis;
+        return this;
+    }
+
+    /**
+     * Set listener
+     * @param listener OnNetBatchResponse
+     */
+    public NetRequestBatch setOnBatchResponseListener(OnNetBatchResponse listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Start the batch
+     */
+    public void start() {
+        checkNotStarted();
+        started    = true;
+        results    = new NetBatchResult[requests.size()];
+        startTimes = new long[requests.size()];
+        debug("Start >> " + requests.size() + " requests");
+        if (deadline > 0) {
+            handler.postDelayed(expire, deadline);
+        }
+        launch();
+        if (requests.isEmpty()) {
+            finish(NetErrorStatus.CANCELED);
+        }
+    }
+
+    /**
+     * Cancel every running request and complete the batch now
+     */
+    public void cancel() {
+        if (started) {
+            finish(NetErrorStatus.CANCELED);
+        }
+    }
+
+    /**
+     * Tell whether or not the batch is done
+     * @return True once the aggregate callback has been triggered
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Called on the main thread once the deadline elapsed
+     */
+    void onDeadline() {
+        debug("Deadline elapsed");
+        finish(NetErrorStatus.TIMEOUT);
+    }
+
+    /**
+     * Start requests while the concurrency limit allows it
+     */
+    private void launch() {
+        if (launching) {
+            return;
+        }
+        launching = true;
+        try {
+            while (!finished && running < maxConcurrency && next < requests.size()) {
+                final int index   = next++;
+                final NetRequest request = requests.get(index);
+                running++;
+                startTimes[index] = System.nanoTime();
+                NetFuture<NetResponse> future = request.loadAsync();
+                futures.add(future);
+                future.addCallback(new NetFuture.Callback<NetResponse>() {
+                    @Override
+                    public void onSuccess(final NetResponse response) {
+                        onMainThread(new Runnable() {
+                            @Override
+                            public void run() {
+                                onResult(index, response, null);
+                            }
+                        });
+                    }
+
+                    @Override
+                    public void onFailure(final NetError error) {
+                        onMainThread(new Runnable() {
+                            @Override
+                            public void run() {
+                                onResult(index, null, error);
+                            }
+                        });
+                    }
+                });
+            }
+        } finally {
+            launching = false;
+        }
+    }
+
+    /**
+     * Run on the main thread, results of requests delivered on another thread are posted
+     * @param runnable Runnable
+     */
+    private void onMainThread(Runnable runnable) {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            runnable.run();
+        } else {
+            handler.post(runnable);
+        }
+    }
+
+    /**
+     * Record the outcome of a request and start the next ones
+     * @param index Request index
+     * @param response NetResponse, null on error
+     * @param error NetError, null on success
+     */
+    private void onResult(int index, NetResponse response, NetError error) {
+        if (finished) {
+            return;
+        }
+        long duration = (System.nanoTime() - startTimes[index]) / 1000000L;
+        NetRequest request = requests.get(index);
+        results[index] = new NetBatchResult(request, response, error, duration);
+        running--;
+        completed++;
+        if (listener != null) {
+            if (error == null) {
+                listener.onNetRequestCompleted(request, response);
+            } else {
+                listener.onNetRequestError(request, error);
+            }
+        }
+        if (completed == requests.size()) {
+            finish(NetErrorStatus.CANCELED);
+        } else {
+            launch();
+        }
+    }
+
+    /**
+     * Cancel what is left and trigger the aggregate callback
+     * @param reason Status reported for requests left without result
+     */
+    private void finish(NetErrorStatus reason) {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        handler.removeCallbacks(expire);
+        for (NetFuture<NetResponse> future : futures) {
+            future.cancel(true);
+        }
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] == null) {
+                long duration = (i >= next) ? 0 : (System.nanoTime() - startTimes[i]) / 1000000L;
+                NetRequest request = requests.get(i);
+                results[i] = new NetBatchResult(request, null,
+                        new NetError(reason, request.getTag()), duration);
+            }
+        }
+        debug("Finish >> " + completed + "/" + requests.size() + " completed");
+        if (listener != null) {
+            listener.onNetBatchCompleted(Collections.unmodifiableList(Arrays.asList(results)));
+        }
+    }
+
+    /**
+     * Requests can only be added and the batch started once
+     */
+    private void checkNotStarted() {
+        if (started) {
+            throw new IllegalStateException("NetRequestBatch already started");
+        }
+    }
+}
@@ -0,0 +1,390 @@
+package com.github.thunder413.netrequest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * NetRequestCanonicalizer
+ * <p>Builds the canonical form of a request, equivalent requests have the same canonical
+ * form so that they are performed once and can share a cache entry:
+ * </p>
+ * <ul>
+ *     <li>The method is part of the form</li>
+ *     <li>Scheme and host are lower-cased and the default port of the scheme is removed</li>
+ *     <li>Percent-encoding is normalized, unreserved characters are decoded and every other
+ *     character is encoded with upper-case hexadecimal digits. A literal <code>+</code> in the
+ *     query stays apart from <code>%2B</code> since form decoding reads it as a space</li>
+ *     <li>Query, default and request parameters sent in the url are merged and sorted by name,
+ *     the order of repeated names is kept since it may be meaningful</li>
+ *     <li>Request parameters sent in the body of a POST are sorted in a section of their own</li>
+ *     <li>The fragment is dropped</li>
+ * </ul>
+ * <p>The form is written as the uri is scanned, only the parameter names are kept aside to be
+ * sorted, so that it can be fed to a {@link NetRequestKey} without building it as a String.
+ * </p>
+ * @author Thunder413
+ * @version 1.4
+ */
+@SuppressWarnings("WeakerAccess")
+public final class NetRequestCanonicalizer {
+    /**
+     * Upper-case hexadecimal digits
+     */
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    /**
+     * Characters kept as is in the path besides unreserved ones
+     */
+    private static final String PATH_CHARACTERS = "/:@!$&'()*+,;=";
+    /**
+     * Characters kept as is in query and body components besides unreserved ones
+     */
+    private static final String QUERY_CHARACTERS = "+";
+
+    /**
+     * Parameter waiting to be written, its name is encoded to be sorted while its value is
+     * encoded as it is written
+     */
+    private static final class Pair {
+        /**
+         * Encoded name
+         */
+        final String name;
+        /**
+         * String holding the value
+         */
+        final String source;
+        /**
+         * Start of the value in the source
+         */
+        final int start;
+        /**
+         * End of the value in the source
+         */
+        final int end;
+
+        Pair(String name, String source, int start, int end) {
+            this.name   = name;
+            this.source = source;
+            this.start  = start;
+            this.end    = end;
+        }
+    }
+
+    private NetRequestCanonicalizer() {}
+
+    /**
+     * Get the canonical form of a request
+     * @param method Request method
+     * @param uri Request uri
+     * @param parameters Parameters
+     * @return Canonical form
+     */
+    public static String canonicalize(RequestMethod method, String uri, List<NetParameter> parameters) {
+        StringBuilder out = new StringBuilder(uri.length() + 64);
+        canonicalize(out, method, uri, Collections.<NetParameter>emptyList(), parameters);
+        return out.toString();
+    }
+
+    /**
+     * Write the canonical form of a request
+     * @param out Output
+     * @param method Request method
+     * @param uri Request uri
+     * @param defaultParameters Default parameters of the manager
+     * @param parameters Parameters of the request
+     */
+    static void canonicalize(StringBuilder out, RequestMethod method, String uri,
+                             List<NetParameter> defaultParameters, List<NetParameter> parameters) {
+        write(out, method, uri, defaultParameters, parameters);
+    }
+
+    /**
+     * Feed the canonical form of a request to a key
+     * @param out Key builder
+     * @param method Request method
+     * @param uri Request uri
+     * @param defaultParameters Default parameters of the manager
+     * @param parameters Parameters of the request
+     */
+    static void canonicalize(NetRequestKey.Builder out, RequestMethod method, String uri,
+                             List<NetParameter> defaultParameters, List<NetParameter> parameters) {
+        write(out, method, uri, defaultParameters, parameters);
+    }
+
+    /**
+     * Write the canonical form of a request to an output that does not throw
+     * @param out StringBuilder or NetRequestKey.Builder
+     * @param method Request method
+     * @param uri Request uri
+     * @param defaultParameters Default parameters of the manager
+     * @param parameters Parameters of the request
+     */
+    private static void write(Appendable out, RequestMethod method, String uri,
+                              List<NetParameter> defaultParameters, List<NetParameter> parameters) {
+        try {
+            appendRequest(out, method, uri, defaultParameters, parameters);
+        } catch (IOException e) {
+            // Neither output performs I/O
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Write the canonical form of a request
+     * @param out Output
+     * @param method Request method
+     * @param uri Request uri
+     * @param defaultParameters Default parameters of the manager
+     * @param parameters Parameters of the request
+     * @throws IOException When the output fails
+     */
+    private static void appendRequest(Appendable out, RequestMethod method, String uri,
+                                      List<NetParameter> defaultParameters,
+                                      List<NetParameter> parameters) throws IOException {
+        out.append(method.name()).append(' ');
+        int end = uri.indexOf('#');
+        if (end < 0) {
+            end = uri.length();
+        }
+        int queryStart = uri.indexOf('?');
+        if (queryStart > end) {
+            queryStart = -1;
+        }
+        int baseEnd   = (queryStart >= 0) ? queryStart : end;
+        int schemeEnd = uri.indexOf("://");
+        int pathStart = 0;
+        if (schemeEnd > 0 && schemeEnd < baseEnd) {
+            appendLowerCase(out, uri, 0, schemeEnd);
+            out.append("://");
+            int authorityEnd = uri.indexOf('/', schemeEnd + 3);
+            if (authorityEnd < 0 || authorityEnd > baseEnd) {
+                authorityEnd = baseEnd;
+            }
+            appendAuthority(out, uri, schemeEnd, schemeEnd + 3, authorityEnd);
+            pathStart = authorityEnd;
+            if (pathStart == baseEnd) {
+                out.append('/');
+            }
+        }
+        appendEncoded(out, uri, pathStart, baseEnd, PATH_CHARACTERS);
+
+        // Request parameters of a POST are sent in the body, the url only has the default ones
+        boolean inBody = method == RequestMethod.POST;
+        List<Pair> pairs = new ArrayList<>();
+        if (queryStart >= 0) {
+            for (int i = queryStart + 1; i < end; ) {
+                int next = uri.indexOf('&', i);
+                if (next < 0 || next > end) {
+                    next = end;
+                }
+                if (next > i) {
+                    int equals = uri.indexOf('=', i);
+                    if (equals < 0 || equals > next) {
+                        pairs.add(new Pair(encode(uri, i, next), uri, next, next));
+                    } else {
+                        pairs.add(new Pair(encode(uri, i, equals), uri, equals + 1, next));
+                    }
+                }
+                i = next + 1;
+            }
+        }
+        addParameters(pairs, defaultParameters);
+        if (!inBody) {
+            addParameters(pairs, parameters);
+        }
+        appendPairs(out, '?', pairs);
+        if (inBody && !parameters.isEmpty()) {
+            // A space can not appear in the encoded url, it starts the body section
+            pairs.clear();
+            addParameters(pairs, parameters);
+            appendPairs(out, ' ', pairs);
+        }
+    }
+
+    /**
+     * Add parameters to a list of pairs
+     * @param pairs Pairs
+     * @param parameters Parameters
+     */
+    private static void addParameters(List<Pair> pairs, List<NetParameter> parameters) {
+        for (NetParameter parameter : parameters) {
+            String name  = String.valueOf(parameter.getName());
+            String value = String.valueOf(parameter.getValue());
+            pairs.add(new Pair(encode(name, 0, name.length()), value, 0, value.length()));
+        }
+    }
+
+    /**
+     * Sort pairs by name and write them, the sort is stable so the order of repeated names
+     * is kept
+     * @param out Output
+     * @param first Character starting the section
+     * @param pairs Pairs
+     */
+    private static void appendPairs(Appendable out, char first, List<Pair> pairs) throws IOException {
+        // Insertion sort, requests have a handful of parameters
+        for (int i = 1; i < pairs.size(); i++) {
+            Pair pair = pairs.get(i);
+            int j = i;
+            for (; j > 0 && pairs.get(j - 1).name.compareTo(pair.name) > 0; j--) {
+                pairs.set(j, pairs.get(j - 1));
+            }
+            pairs.set(j, pair);
+        }
+        for (int i = 0; i < pairs.size(); i++) {
+            Pair pair = pairs.get(i);
+            out.append(i == 0 ? first : '&').append(pair.name).append('=');
+            appendEncoded(out, pair.source, pair.start, pair.end, QUERY_CHARACTERS);
+        }
+    }
+
+    /**
+     * Write the authority with a lower-cased host and without the default port
+     * @param out Output
+     * @param uri Uri
+     * @param schemeEnd End of the scheme
+     * @param start Start of the authority
+     * @param end End of the authority
+     */
+    private static void appendAuthority(Appendable out, String uri, int schemeEnd, int start, int end)
+            throws IOException {
+        int at = uri.lastIndexOf('@', end - 1);
+        if (at >= start) {
+            out.append(uri, start, at + 1);
+            start = at + 1;
+        }
+        // The port follows the last colon, unless it is part of an IPv6 literal
+        int colon = uri.lastIndexOf(':', end - 1);
+        if (colon >= start && colon > uri.lastIndexOf(']', end - 1)) {
+            appendLowerCase(out, uri, start, colon);
+            if (colon + 1 < end && !isDefaultPort(uri, schemeEnd, colon + 1, end)) {
+                out.append(uri, colon, end);
+            }
+        } else {
+            appendLowerCase(out, uri, start, end);
+        }
+    }
+
+    /**
+     * Check if a port is the default one of the scheme
+     * @param uri Uri
+     * @param schemeEnd End of the scheme, it starts the uri
+     * @param start Start of the port
+     * @param end End of the port
+     * @return True for http on 80 and https on 443
+     */
+    private static boolean isDefaultPort(String uri, int schemeEnd, int start, int end) {
+        return (schemeEnd == 4 && uri.regionMatches(true, 0, "http", 0, 4)
+                && end - start == 2 && uri.regionMatches(start, "80", 0, 2))
+                || (schemeEnd == 5 && uri.regionMatches(true, 0, "https", 0, 5)
+                && end - start == 3 && uri.regionMatches(start, "443", 0, 3));
+    }
+
+    /**
+     * Write characters lower-cased
+     * @param out Output
+     * @param value Characters
+     * @param start Start
+     * @param end End
+     */
+    private static void appendLowerCase(Appendable out, String value, int start, int end) throws IOException {
+        for (int i = start; i < end; i++) {
+            out.append(Character.toLowerCase(value.charAt(i)));
+        }
+    }
+
+    /**
+     * Normalize the percent-encoding of a query component
+     * @param value String holding the component
+     * @param start Start of the component
+     * @param end End of the component
+     * @return Encoded component, the component itself when nothing changes
+     */
+    private static String encode(String value, int start, int end) {
+        int i = start;
+        while (i < end && isUnreserved(value.charAt(i))) {
+            i++;
+        }
+        if (i == end) {
+            return (start == 0 && end == value.length()) ? value : value.substring(start, end);
+        }
+        StringBuilder out = new StringBuilder(end - start + 8);
+        try {
+            appendEncoded(out, value, start, end, QUERY_CHARACTERS);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Write a component with normalized percent-encoding, escaped unreserved characters are
+     * decoded while escaped reserved ones stay escaped since decoding them changes the meaning
+     * @param out Output
+     * @param value String holding the component, may contain percent-encoded sequences
+     * @param start Start of the component
+     * @param end End of the component
+     * @param allowed Characters kept as is besides unreserved ones
+     */
+    private static void appendEncoded(Appendable out, String value, int start, int end, String allowed)
+            throws IOException {
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c == '%' && i + 2 < end) {
+                int high = Character.digit(value.charAt(i + 1), 16);
+                int low  = Character.digit(value.charAt(i + 2), 16);
+                if (high >= 0 && low >= 0) {
+                    appendByte(out, (high << 4) | low, "");
+                    i += 2;
+                    continue;
+                }
+            }
+            if (c < 0x80) {
+                appendByte(out, c, allowed);
+            } else if (c < 0x800) {
+                appendByte(out, 0xc0 | (c >> 6), "");
+                appendByte(out, 0x80 | (c & 0x3f), "");
+            } else if (Character.isHighSurrogate(c) && i + 1 < end
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                appendByte(out, 0xf0 | (codePoint >> 18), "");
+                appendByte(out, 0x80 | ((codePoint >> 12) & 0x3f), "");
+                appendByte(out, 0x80 | ((codePoint >> 6) & 0x3f), "");
+                appendByte(out, 0x80 | (codePoint & 0x3f), "");
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogate, replaced as the UTF-8 encoder does
+                appendByte(out, '?', "");
+            } else {
+                appendByte(out, 0xe0 | (c >> 12), "");
+                appendByte(out, 0x80 | ((c >> 6) & 0x3f), "");
+                appendByte(out, 0x80 | (c & 0x3f), "");
+            }
+        }
+    }
+
+    /**
+     * Write a byte, escaped unless unreserved or allowed
+     * @param out Output
+     * @param c Byte
+     * @param allowed Characters kept as is besides unreserved ones
+     */
+    private static void appendByte(Appendable out, int c, String allowed) throws IOException {
+        if (isUnreserved(c) || (c < 0x80 && allowed.indexOf(c) >= 0)) {
+            out.append((char) c);
+        } else {
+            out.append('%').append(HEX[c >> 4]).append(HEX[c & 0xf]);
+        }
+    }
+
+    /**
+     * RFC 3986 unreserved characters
+     * @param c Byte
+     * @return True if unreserved
+     */
+    private static boolean isUnreserved(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '-' || c == '.' || c == '_' || c == '~';
+    }
+}
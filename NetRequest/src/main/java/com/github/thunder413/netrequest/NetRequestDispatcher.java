@@ -0,0 +1,972 @@
+package com.github.thunder413.netrequest;
+
+import android.os.Looper;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * NetRequestDispatcher
+ * <p>Decides when queued tasks are executed. A task waits in the ready queue until
+ * both the global limit of in flight requests and the limit of in flight requests
+ * for its host allow it to run, it is then promoted to the running list and handed
+ * to the executor. Each time a task finishes the ready queue is walked again so
+ * waiting tasks take over the freed slots.
+ * </p>
+ * <p>The ready queue is ordered by {@link RequestPriority}. Each task is ranked by its enqueue
+ * time shifted by one aging interval per priority level, so a waiting task gains one level every
+ * interval and low priority work is never starved.
+ * </p>
+ * <p>Hosts may also be given a {@link NetRateLimiter}, a task only leaves the queue once its
+ * host bucket has a token, otherwise the queue is walked again when the next token is due.
+ * </p>
+ * <p>When circuit breakers are enabled, tasks for a host whose breaker is open are failed
+ * as soon as they are reached in the queue, without waiting for a slot.
+ * </p>
+ * <p>Tasks refused while the dispatcher lock is held are collected and their error is delivered
+ * once the lock is released, listeners may then call back into the dispatcher.
+ * </p>
+ * <p>The depth of the ready queue can be bounded, new tasks are then handled according to the
+ * {@link OverflowPolicy} once it is reached.
+ * </p>
+ * @author Thunder413
+ * @version 1.4
+ */
+@SuppressWarnings("WeakerAccess")
+public class NetRequestDispatcher {
+    /**
+     * Default global limit of in flight requests
+     */
+    public static final int DEFAULT_MAX_REQUESTS = 64;
+    /**
+     * Default limit of in flight requests for a single host
+     */
+    public static final int DEFAULT_MAX_REQUESTS_PER_HOST = 5;
+    /**
+     * Default time a queued task has to wait to gain one priority level
+     */
+    public static final long DEFAULT_PRIORITY_AGING_INTERVAL = 2000;
+    /**
+     * Global limit of in flight requests
+     */
+    private int maxRequests = DEFAULT_MAX_REQUESTS;
+    /**
+     * Limit of in flight requests for a single host
+     */
+    private int maxRequestsPerHost = DEFAULT_MAX_REQUESTS_PER_HOST;
+    /**
+     * Whether or not requests may run in parallel
+     */
+    private boolean parallel = true;
+    /**
+     * Time in milliseconds a queued task has to wait to gain one priority level
+     */
+    private long priorityAgingInterval = DEFAULT_PRIORITY_AGING_INTERVAL;
+    /**
+     * Maximum number of tasks waiting for a slot
+     */
+    private int maxQueueDepth = Integer.MAX_VALUE;
+    /**
+     * What to do with new tasks once the ready queue is full
+     */
+    private OverflowPolicy overflowPolicy = OverflowPolicy.REJECT_NEWEST;
+    /**
+     * Number of tasks rejected or dropped because the ready queue was full
+     */
+    private long rejectedCount;
+    /**
+     * Number of callers waiting for room in the ready queue
+     */
+    private int blockedCallers;
+    /**
+     * Enqueue counter
+     */
+    private long sequence;
+    /**
+     * Tasks waiting for a free slot, by rank
+     */
+    private final TreeSet<NetRequestTask> readyTasks = new TreeSet<>(new Comparator<NetRequestTask>() {
+        @Override
+        public int compare(NetRequestTask a, NetRequestTask b) {
+            if (a.getQueueRank() != b.getQueueRank()) {
+                return a.getQueueRank() < b.getQueueRank() ? -1 : 1;
+            }
+            if (a.getQueueSequence() != b.getQueueSequence()) {
+                return a.getQueueSequence() < b.getQueueSequence() ? -1 : 1;
+            }
+            return 0;
+        }
+    });
+    /**
+     * Tasks currently executed
+     */
+    private final Deque<NetRequestTask> runningTasks = new ArrayDeque<>();
+    /**
+     * Tasks refused under the lock whose error has not been delivered yet, in order
+     */
+    private final Map<NetRequestTask, NetErrorStatus> rejectedTasks = new LinkedHashMap<>();
+    /**
+     * Tasks promoted under the lock, submitted to the executor once it is released
+     */
+    private final List<NetRequestTask> promotedTasks = new ArrayList<>();
+    /**
+     * Executor running the tasks, default pool created on first use
+     */
+    private ExecutorService executorService;
+    /**
+     * Rate limiters by host
+     */
+    private final Map<String, NetRateLimiter> rateLimiters = new ConcurrentHashMap<>();
+    /**
+     * Whether or not per host limits adapt to observed latency
+     */
+    private boolean adaptiveConcurrency;
+    /**
+     * Adaptive limits by host
+     */
+    private final Map<String, NetConcurrencyLimit> concurrencyLimits = new ConcurrentHashMap<>();
+    /**
+     * Circuit breaker thresholds, null when circuit breakers are disabled
+     */
+    private volatile CircuitBreakerPolicy circuitBreakerPolicy;
+    /**
+     * Circuit breakers by host
+     */
+    private final ConcurrentMap<String, NetCircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+    /**
+     * Response times by host
+     */
+    private final ConcurrentMap<String, NetLatencyTracker> latencyTrackers = new ConcurrentHashMap<>();
+    /**
+     * Scheduler used to walk the ready queue again once a rate limiter has a token,
+     * to start hedge requests and to run the deadline watchdogs
+     */
+    private ScheduledExecutorService scheduler;
+    /**
+     * Pending delayed walk of the ready queue
+     */
+    private ScheduledFuture<?> scheduledPromote;
+    /**
+     * Time the pending delayed walk runs at, in nanoseconds
+     */
+    private long scheduledPromoteAt;
+    /**
+     * Executor running the parse stage, default pool created on first use
+     */
+    private ExecutorService parseExecutorService;
+    /**
+     * Executor running the hedge requests, created on first use
+     */
+    private ExecutorService hedgeExecutorService;
+
+    /**
+     * Constructor
+     */
+    NetRequestDispatcher() {}
+
+    /**
+     * Get the executor, the dispatcher already bounds concurrency so the default pool
+     * itself only recycles idle threads
+     * @return ExecutorService
+     */
+    private synchronized ExecutorService executorService() {
+        if (executorService == null) {
+            executorService = NetExecutors.newCachedPool();
+        }
+        return executorService;
+    }
+
+    /**
+     * Set the executor running the tasks, tasks already started keep running on the
+     * previous one which is not shut down
+     * @param executorService ExecutorService, null to restore the default pool
+     */
+    public synchronized void setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
+    /**
+     * Get the parse executor, sized to the available processors by default
+     * @return ExecutorService
+     */
+    private synchronized ExecutorService parseExecutorService() {
+        if (parseExecutorService == null) {
+            parseExecutorService = NetExecutors.newParsePool();
+        }
+        return parseExecutorService;
+    }
+
+    /**
+     * Set the executor running the parse stage
+     * @param parseExecutorService ExecutorService, null to restore the default pool
+     */
+    public synchronized void setParseExecutorService(ExecutorService parseExecutorService) {
+        this.parseExecutorService = parseExecutorService;
+    }
+
+    /**
+     * Run a parse stage, inline if the parse executor refuses it
+     * @param stage Parse stage
+     */
+    void parse(Runnable stage) {
+        try {
+            parseExecutorService().execute(stage);
+        } catch (RejectedExecutionException e) {
+            stage.run();
+        }
+    }
+
+    /**
+     * Set the global limit of in flight requests
+     * @param maxRequests Limit, at least 1
+     */
+    public void setMaxRequests(int maxRequests) {
+        if (maxRequests < 1) {
+            throw new IllegalArgumentException("max < 1: " + maxRequests);
+        }
+        synchronized (this) {
+            this.maxRequests = maxRequests;
+            promote();
+        }
+        dispatchPending();
+    }
+
+    /**
+     * Get the global limit of in flight requests
+     * @return Limit
+     */
+    public synchronized int getMaxRequests() {
+        return maxRequests;
+    }
+
+    /**
+     * Set the limit of in flight requests for a single host
+     * @param maxRequestsPerHost Limit, at least 1
+     */
+    public void setMaxRequestsPerHost(int maxRequestsPerHost) {
+        if (maxRequestsPerHost < 1) {
+            throw new IllegalArgumentException("max < 1: " + maxRequestsPerHost);
+        }
+        synchronized (this) {
+            this.maxRequestsPerHost = maxRequestsPerHost;
+            promote();
+        }
+        dispatchPending();
+    }
+
+    /**
+     * Get the limit of in flight requests for a single host
+     * @return Limit
+     */
+    public synchronized int getMaxRequestsPerHost() {
+        return maxRequestsPerHost;
+    }
+
+    /**
+     * Set how long a queued task has to wait to gain one priority level
+     * @param millis Interval in milliseconds
+     */
+    public synchronized void setPriorityAgingInterval(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("interval < 0: " + millis);
+        }
+        // Ranks depend on the interval, rebuild the queue with the new ones
+        List<NetRequestTask> tasks = new ArrayList<>(readyTasks);
+        readyTasks.clear();
+        for (NetRequestTask task : tasks) {
+            task.setQueueRank(task.getQueueRank()
+                    - task.getPriority().ordinal() * priorityAgingInterval
+                    + task.getPriority().ordinal() * millis);
+        }
+        priorityAgingInterval = millis;
+        readyTasks.addAll(tasks);
+    }
+
+    /**
+     * Get how long a queued task has to wait to gain one priority level
+     * @return Interval in milliseconds
+     */
+    public synchronized long getPriorityAgingInterval() {
+        return priorityAgingInterval;
+    }
+
+    /**
+     * Limit the rate at which requests to a host leave the queue
+     * @param host Host
+     * @param rateLimiter NetRateLimiter, null to remove the limit
+     */
+    public void setRateLimiter(String host, NetRateLimiter rateLimiter) {
+        synchronized (this) {
+            if (rateLimiter == null) {
+                rateLimiters.remove(host.toLowerCase());
+            } else {
+                rateLimiters.put(host.toLowerCase(), rateLimiter);
+            }
+            promote();
+        }
+        dispatchPending();
+    }
+
+    /**
+     * Get the rate limiter of a host
+     * @param host Host
+     * @return NetRateLimiter, null if the host is not limited
+     */
+    public NetRateLimiter getRateLimiter(String host) {
+        return rateLimiters.get(host.toLowerCase());
+    }
+
+    /**
+     * Enable / Disable adaptive per host limits. When enabled the per host limit of each
+     * host starts at {@link #getMaxRequestsPerHost()} then follows its
+     * {@link NetConcurrencyLimit}, between 1 and {@link #getMaxRequests()}
+     * @param enabled State
+     */
+    public void setAdaptiveConcurrencyEnabled(boolean enabled) {
+        synchronized (this) {
+            adaptiveConcurrency = enabled;
+            concurrencyLimits.clear();
+            promote();
+        }
+        dispatchPending();
+    }
+
+    /**
+     * Tell whether or not per host limits adapt to observed latency
+     * @return State
+     */
+    public synchronized boolean isAdaptiveConcurrencyEnabled() {
+        return adaptiveConcurrency;
+    }
+
+    /**
+     * Get the current limit of in flight requests for a host
+     * @param host Host
+     * @return Adaptive limit if enabled, static per host limit otherwise
+     */
+    public synchronized int getConcurrencyLimit(String host) {
+        return adaptiveConcurrency ? concurrencyLimit(host.toLowerCase()).getLimit() : maxRequestsPerHost;
+    }
+
+    /**
+     * Get or create the adaptive limit of a host
+     * @param host Host
+     * @return NetConcurrencyLimit
+     */
+    private NetConcurrencyLimit concurrencyLimit(String host) {
+        NetConcurrencyLimit concurrencyLimit = concurrencyLimits.get(host);
+        if (concurrencyLimit == null) {
+            concurrencyLimit = new NetConcurrencyLimit(maxRequestsPerHost, 1, Math.max(1, maxRequests));
+            concurrencyLimits.put(host, concurrencyLimit);
+        }
+        return concurrencyLimit;
+    }
+
+    /**
+     * Set the thresholds of the per host circuit breakers
+     * @param policy CircuitBreakerPolicy, null to disable circuit breakers
+     */
+    public void setCircuitBreakerPolicy(CircuitBreakerPolicy policy) {
+        if (policy != null) {
+            policy.validate();
+        }
+        synchronized (this) {
+            circuitBreakerPolicy = policy;
+            circuitBreakers.clear();
+            promote();
+        }
+        dispatchPending();
+    }
+
+    /**
+     * Get the circuit breaker of a host
+     * @param host Host
+     * @return NetCircuitBreaker, null when circuit breakers are disabled
+     */
+    public NetCircuitBreaker getCircuitBreaker(String host) {
+        CircuitBreakerPolicy policy = circuitBreakerPolicy;
+        if (policy == null) {
+            return null;
+        }
+        String key = host.toLowerCase();
+        NetCircuitBreaker circuitBreaker = circuitBreakers.get(key);
+        if (circuitBreaker == null) {
+            circuitBreaker = new NetCircuitBreaker(policy);
+            NetCircuitBreaker existing = circuitBreakers.putIfAbsent(key, circuitBreaker);
+            if (existing != null) {
+                circuitBreaker = existing;
+            }
+        }
+        return circuitBreaker;
+    }
+
+    /**
+     * Record the outcome of a task in the circuit breaker of its host
+     * @param task NetRequestTask
+     */
+    void recordOutcome(NetRequestTask task) {
+        NetCircuitBreaker circuitBreaker = getCircuitBreaker(task.getHost());
+        if (circuitBreaker == null) {
+            return;
+        }
+        NetErrorStatus status = task.getStatus();
+        if (task.getAttemptTime() == 0 || status == NetErrorStatus.CANCELED) {
+            circuitBreaker.onIgnored(task.getCircuitPermit());
+            return;
+        }
+        circuitBreaker.onResult(task.getCircuitPermit(), status == NetErrorStatus.REQUEST_ERROR
+                || status == NetErrorStatus.TIMEOUT
+                || status == NetErrorStatus.BAD_GATEWAY
+                || (status == NetErrorStatus.SERVER_ERROR && task.getResponseCode() >= 500));
+    }
+
+    /**
+     * Enable / Disable parallel execution, when disabled tasks run one at a time
+     * @param parallel State
+     */
+    void setParallel(boolean parallel) {
+        synchronized (this) {
+            this.parallel = parallel;
+            promote();
+        }
+        dispatchPending();
+    }
+
+    /**
+     * Add a task to the ready queue and run it as soon as a slot is free
+     * @param task NetRequestTask
+     */
+    void enqueue(NetRequestTask task) {
+        synchronized (this) {
+            RequestPriority priority = task.getEntry().getPriority();
+            if (readyTasks.size() >= maxQueueDepth && !admit(task, priority)) {
+                rejectedCount++;
+                reject(task, NetErrorStatus.QUEUE_FULL);
+            } else {
+                add(task, priority);
+                promote();
+            }
+        }
+        dispatchPending();
+    }
+
+    /**
+     * Put a task back in the ready queue once its retry backoff elapsed, it holds no slot
+     * meanwhile. It has already been admitted so the queue depth is not checked
+     * @param task NetRequestTask
+     * @param delay Backoff in milliseconds
+     */
+    synchronized void retry(final NetRequestTask task, long delay) {
+        scheduler().schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (task.isCancelled()) {
+                    // Cancelled during the backoff
+                    task.reject(NetErrorStatus.CANCELED);
+                    return;
+                }
+                synchronized (NetRequestDispatcher.this) {
+                    add(task, task.getEntry().getPriority());
+                    promote();
+                }
+                dispatchPending();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Rank a task and add it to the ready queue
+     * @param task NetRequestTask
+     * @param priority Priority of the task
+     */
+    private void add(NetRequestTask task, RequestPriority priority) {
+        task.setPriority(priority);
+        task.setQueueSequence(sequence++);
+        task.setQueueRank(now() + priority.ordinal() * priorityAgingInterval);
+        readyTasks.add(task);
+    }
+
+    /**
+     * Make room for a task in a full ready queue according to the overflow policy
+     * @param task NetRequestTask
+     * @param priority Priority of the task
+     * @return False if the task has to be rejected
+     */
+    private boolean admit(NetRequestTask task, RequestPriority priority) {
+        switch (overflowPolicy) {
+            case DROP_OLDEST_LOW_PRIORITY:
+                NetRequestTask victim = null;
+                for (NetRequestTask queued : readyTasks) {
+                    if (queued.getPriority().ordinal() >= priority.ordinal()
+                            && (victim == null
+                            || queued.getPriority().ordinal() > victim.getPriority().ordinal()
+                            || (queued.getPriority() == victim.getPriority()
+                            && queued.getQueueSequence() < victim.getQueueSequence()))) {
+                        victim = queued;
+                    }
+                }
+                if (victim == null) {
+                    return false;
+                }
+                readyTasks.remove(victim);
+                rejectedCount++;
+                reject(victim, NetErrorStatus.QUEUE_FULL);
+                return true;
+            case BLOCK:
+                return awaitRoom(task);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Wait until the ready queue has room, never on the main thread
+     * @param task NetRequestTask, its deadline bounds the wait, null for none
+     * @return False if the caller is the main thread, was interrupted or the deadline elapsed
+     */
+    private boolean awaitRoom(NetRequestTask task) {
+        if (Looper.myLooper() != null && Looper.myLooper() == Looper.getMainLooper()) {
+            return false;
+        }
+        blockedCallers++;
+        try {
+            while (readyTasks.size() >= maxQueueDepth) {
+                long remaining = (task == null) ? Long.MAX_VALUE : task.getRemainingTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                wait(remaining == Long.MAX_VALUE ? 0 : remaining);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            blockedCallers--;
+        }
+    }
+
+    /**
+     * Admission of a synchronous request, it does not enter the ready queue but waits for room
+     * when the queue is full and the policy is {@link OverflowPolicy#BLOCK}
+     * @param task NetRequestTask
+     * @return False if the request has to be rejected
+     */
+    synchronized boolean admitSync(NetRequestTask task) {
+        if (readyTasks.size() < maxQueueDepth) {
+            return true;
+        }
+        if (overflowPolicy == OverflowPolicy.BLOCK && awaitRoom(task)) {
+            return true;
+        }
+        rejectedCount++;
+        return false;
+    }
+
+    /**
+     * Set the maximum number of tasks waiting for a slot
+     * @param maxQueueDepth Limit, {@link Integer#MAX_VALUE} for no limit (default)
+     */
+    public synchronized void setMaxQueueDepth(int maxQueueDepth) {
+        if (maxQueueDepth < 1) {
+            throw new IllegalArgumentException("max < 1: " + maxQueueDepth);
+        }
+        this.maxQueueDepth = maxQueueDepth;
+        notifyAll();
+    }
+
+    /**
+     * Get the maximum number of tasks waiting for a slot
+     * @return Limit
+     */
+    public synchronized int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    /**
+     * Set what happens to new tasks once the ready queue is full
+     * @param overflowPolicy OverflowPolicy, default {@link OverflowPolicy#REJECT_NEWEST}
+     */
+    public synchronized void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+        notifyAll();
+    }
+
+    /**
+     * Number of tasks rejected or dropped because the ready queue was full
+     * @return Count
+     */
+    public synchronized long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * Change the priority of a task that has not been started yet, it keeps the
+     * time it has already spent in the queue
+     * @param task NetRequestTask
+     * @param priority New priority
+     * @return True if the task was still waiting
+     */
+    boolean reprioritize(NetRequestTask task, RequestPriority priority) {
+        synchronized (this) {
+            if (!readyTasks.remove(task)) {
+                return false;
+            }
+            task.setQueueRank(task.getQueueRank()
+                    + (priority.ordinal() - task.getPriority().ordinal()) * priorityAgingInterval);
+            task.setPriority(priority);
+            readyTasks.add(task);
+            promote();
+        }
+        dispatchPending();
+        return true;
+    }
+
+    /**
+     * Remove a cancelled task from the ready queue, or release its slot right away if it is
+     * running so that the next task does not wait for the cancelled one to unwind
+     * @param task NetRequestTask
+     */
+    void cancel(NetRequestTask task) {
+        synchronized (this) {
+            if (!readyTasks.remove(task)) {
+                release(task);
+                promote();
+            } else if (blockedCallers > 0) {
+                notifyAll();
+            }
+        }
+        dispatchPending();
+    }
+
+    /**
+     * Called by a task once it is done to release its slot
+     * @param task NetRequestTask
+     */
+    void finished(NetRequestTask task) {
+        synchronized (this) {
+            release(task);
+            promote();
+        }
+        dispatchPending();
+    }
+
+    /**
+     * Release the slot of a task and feed its outcome to the breaker, latency tracker and
+     * adaptive limit of its host
+     * @param task NetRequestTask
+     */
+    private void release(NetRequestTask task) {
+        boolean removed = runningTasks.remove(task);
+        if (removed) {
+            recordOutcome(task);
+        }
+        boolean roundTrip = removed && isRoundTripSample(task);
+        if (roundTrip && task.getStatus() != NetErrorStatus.REQUEST_ERROR
+                && task.getStatus() != NetErrorStatus.CANCELED) {
+            latencyTracker(task.getHost()).record(task.getAttemptTime());
+        }
+        if (removed && adaptiveConcurrency && task.getAttemptTime() > 0) {
+            NetErrorStatus status = task.getStatus();
+            boolean overloaded = status == NetErrorStatus.REQUEST_ERROR
+                    || status == NetErrorStatus.TIMEOUT
+                    || status == NetErrorStatus.BAD_GATEWAY
+                    || status == NetErrorStatus.SERVER_ERROR;
+            // Other tasks only feed the overload signal, their time is not a round trip
+            if (status != NetErrorStatus.CANCELED && (roundTrip || overloaded)) {
+                concurrencyLimit(task.getHost()).onSample(task.getAttemptTime(),
+                        runningTasksForHost(task.getHost()) + 1, overloaded);
+            }
+        }
+    }
+
+    /**
+     * Tell whether or not the last attempt of a task is a round trip sample, a hedged attempt
+     * includes the hedge delay
+     * @param task NetRequestTask
+     * @return True|False
+     */
+    private static boolean isRoundTripSample(NetRequestTask task) {
+        return !task.isHedged() && task.getAttemptTime() > 0;
+    }
+
+    /**
+     * Get a percentile of the recent response times of a host
+     * @param host Host
+     * @param percentile Percentile between 0 and 100
+     * @return Response time in milliseconds, 0 while not enough responses were received
+     */
+    public long getLatencyPercentile(String host, int percentile) {
+        NetLatencyTracker tracker = latencyTrackers.get(host.toLowerCase());
+        return tracker == null ? 0 : tracker.getPercentile(percentile);
+    }
+
+    /**
+     * Number of tasks waiting for a slot
+     * @return Count
+     */
+    public synchronized int getQueuedCount() {
+        return readyTasks.size();
+    }
+
+    /**
+     * Number of tasks being executed
+     * @return Count
+     */
+    public synchronized int getRunningCount() {
+        return runningTasks.size();
+    }
+
+    /**
+     * Move waiting tasks to the running list while limits allow it and drop the ones
+     * whose deadline elapsed
+     */
+    private void promote() {
+        int max        = parallel ? maxRequests : 1;
+        int maxPerHost = parallel ? maxRequestsPerHost : 1;
+        long nextDeadline = Long.MAX_VALUE;
+        for (Iterator<NetRequestTask> it = readyTasks.iterator(); it.hasNext(); ) {
+            NetRequestTask task = it.next();
+            if (task.isExpired()) {
+                // Deadline elapsed while queued, drop it instead of starting it
+                it.remove();
+                reject(task, NetErrorStatus.TIMEOUT);
+                continue;
+            }
+            NetCircuitBreaker circuitBreaker = getCircuitBreaker(task.getHost());
+            if (circuitBreaker != null && !circuitBreaker.isCallPermitted()) {
+                // Fail fast without waiting for a slot, stuck requests to the host may hold them
+                it.remove();
+                reject(task, NetErrorStatus.CIRCUIT_OPEN);
+                continue;
+            }
+            nextDeadline = Math.min(nextDeadline, task.getRemainingTime());
+            if (runningTasks.size() >= max) {
+                continue;
+            }
+            int hostLimit = (parallel && adaptiveConcurrency)
+                    ? concurrencyLimit(task.getHost()).getLimit() : maxPerHost;
+            if (runningTasksForHost(task.getHost()) >= hostLimit) {
+                continue;
+            }
+            // The half open probe is only taken by a task actually promoted
+            long permit = (circuitBreaker != null) ? circuitBreaker.tryAcquire() : NetCircuitBreaker.CALL;
+            if (permit == NetCircuitBreaker.REFUSED) {
+                it.remove();
+                reject(task, NetErrorStatus.CIRCUIT_OPEN);
+                continue;
+            }
+            NetRateLimiter rateLimiter = rateLimiters.get(task.getHost());
+            if (rateLimiter != null) {
+                long wait = rateLimiter.tryAcquire();
+                if (wait > 0) {
+                    if (circuitBreaker != null) {
+                        circuitBreaker.onIgnored(permit);
+                    }
+                    schedulePromote(wait);
+                    continue;
+                }
+            }
+            it.remove();
+            task.setCircuitPermit(permit);
+            runningTasks.add(task);
+            // Submitted by dispatchPending once the lock is released
+            promotedTasks.add(task);
+        }
+        if (blockedCallers > 0 && readyTasks.size() < maxQueueDepth) {
+            notifyAll();
+        }
+        if (nextDeadline != Long.MAX_VALUE && !readyTasks.isEmpty()) {
+            // Walk again when the earliest queued deadline elapses
+            schedulePromote(TimeUnit.MILLISECONDS.toNanos(nextDeadline + 1));
+        }
+    }
+
+    /**
+     * Walk the ready queue again after a delay, used when a rate limiter refused a task or
+     * when a queued task expires. Only the earliest pending walk is kept
+     * @param delay Delay in nanoseconds
+     */
+    private void schedulePromote(long delay) {
+        long at = System.nanoTime() + delay;
+        if (scheduledPromote != null && !scheduledPromote.isDone() && scheduledPromoteAt - at <= 0) {
+            return;
+        }
+        if (scheduledPromote != null) {
+            scheduledPromote.cancel(false);
+        }
+        scheduledPromoteAt = at;
+        scheduledPromote   = scheduler().schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (NetRequestDispatcher.this) {
+                    promote();
+                }
+                dispatchPending();
+            }
+        }, delay, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Refuse a task, its error is delivered by {@link #dispatchPending()} once the lock
+     * is released
+     * @param task NetRequestTask
+     * @param status Status to deliver
+     */
+    private void reject(NetRequestTask task, NetErrorStatus status) {
+        rejectedTasks.put(task, status);
+    }
+
+    /**
+     * Submit the tasks promoted under the lock to the executor and deliver the error of the
+     * tasks refused under it once it is released, so a slow executor does not hold the lock
+     * and listeners can call back into the dispatcher. A call made while the lock is still
+     * held leaves them to the outer one
+     */
+    private void dispatchPending() {
+        if (Thread.holdsLock(this)) {
+            return;
+        }
+        List<NetRequestTask> promoted;
+        Map<NetRequestTask, NetErrorStatus> rejected;
+        ExecutorService executor;
+        synchronized (this) {
+            if (promotedTasks.isEmpty() && rejectedTasks.isEmpty()) {
+                return;
+            }
+            promoted = new ArrayList<>(promotedTasks);
+            promotedTasks.clear();
+            rejected = new LinkedHashMap<>(rejectedTasks);
+            rejectedTasks.clear();
+            executor = executorService();
+        }
+        for (NetRequestTask task : promoted) {
+            try {
+                task.executeOn(executor);
+            } catch (RejectedExecutionException e) {
+                synchronized (this) {
+                    runningTasks.remove(task);
+                    NetCircuitBreaker circuitBreaker = getCircuitBreaker(task.getHost());
+                    if (circuitBreaker != null) {
+                        circuitBreaker.onIgnored(task.getCircuitPermit());
+                    }
+                }
+                rejected.put(task, NetErrorStatus.REQUEST_ERROR);
+            }
+        }
+        for (Map.Entry<NetRequestTask, NetErrorStatus> rejection : rejected.entrySet()) {
+            rejection.getKey().reject(rejection.getValue());
+        }
+    }
+
+    /**
+     * Run a short command on the scheduler thread after a delay, it must not block since it
+     * would hold back every other scheduled command. It does not wait for a thread of the
+     * task executor, which may be busy with the very requests the command is meant to stop
+     * @param command Command
+     * @param delay Delay in milliseconds
+     * @return Future to cancel the command before it starts
+     */
+    synchronized ScheduledFuture<?> runAfter(Runnable command, long delay) {
+        return scheduler().schedule(command, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Start a hedge request after a delay on the hedge executor, it does not take a slot. The
+     * task executor is not used since the primary request of the hedge already holds one of
+     * its threads, on a fixed pool the hedge would wait for the requests it is meant to race
+     * @param command Command
+     * @param delay Delay in milliseconds
+     * @return Future to cancel the command before it starts
+     */
+    synchronized ScheduledFuture<?> scheduleHedge(final Runnable command, long delay) {
+        return scheduler().schedule(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    hedgeExecutorService().execute(command);
+                } catch (RejectedExecutionException e) {
+                    // Executor shut down, drop the command
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Get the hedge executor, created on first use. The hedge budget bounds the number of
+     * hedge requests in flight
+     * @return ExecutorService
+     */
+    private synchronized ExecutorService hedgeExecutorService() {
+        if (hedgeExecutorService == null) {
+            hedgeExecutorService = NetExecutors.newHedgePool();
+        }
+        return hedgeExecutorService;
+    }
+
+    /**
+     * Get the scheduler, created on first use
+     * @return ScheduledExecutorService
+     */
+    private ScheduledExecutorService scheduler() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(NetExecutors.threadFactory("NetRequest scheduler"));
+        }
+        return scheduler;
+    }
+
+    /**
+     * Get the latency tracker of a host, created on first use
+     * @param host Host
+     * @return NetLatencyTracker
+     */
+    private NetLatencyTracker latencyTracker(String host) {
+        NetLatencyTracker tracker = latencyTrackers.get(host);
+        if (tracker == null) {
+            tracker = new NetLatencyTracker();
+            NetLatencyTracker existing = latencyTrackers.putIfAbsent(host, tracker);
+            if (existing != null) {
+                tracker = existing;
+            }
+        }
+        return tracker;
+    }
+
+    /**
+     * Current time in milliseconds
+     * @return Time
+     */
+    private static long now() {
+        return System.nanoTime() / 1000000L;
+    }
+
+    /**
+     * Count running tasks for a given host
+     * @param host Host
+     * @return Count
+     */
+    private int runningTasksForHost(String host) {
+        int count = 0;
+        for (NetRequestTask task : runningTasks) {
+            if (task.getHost().equals(host)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
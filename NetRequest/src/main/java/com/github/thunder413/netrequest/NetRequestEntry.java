@@ -0,0 +1,260 @@
+package com.github.thunder413.netrequest;
+
+import com.github.thunder413.netrequest.utils.HttpRequest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * NetRequestEntry
+ * <p>Registry entry held by the {@link NetRequestManager} for a given request key. It groups
+ * every NetRequest waiting for the same result, the task performing it, the http request
+ * and the lifecycle state.
+ * </p>
+ * <p>The state and the list of attached requests are kept together in an immutable snapshot
+ * replaced with compare and set, so attaching a request can never race with the delivery of
+ * the result or with the cancellation of the entry.
+ * </p>
+ * @author Thunder413
+ * @version 1.4
+ */
+@SuppressWarnings("WeakerAccess")
+public class NetRequestEntry {
+    /**
+     * Entry lifecycle
+     */
+    public enum State {
+        /**
+         * Waiting for a dispatcher slot
+         */
+        QUEUED,
+        /**
+         * Being performed
+         */
+        RUNNING,
+        /**
+         * Result delivered
+         */
+        FINISHED,
+        /**
+         * Canceled before the result was delivered
+         */
+        CANCELED
+    }
+
+    /**
+     * Immutable state and attached requests pair
+     */
+    private static final class Snapshot {
+        final State state;
+        final List<NetRequest> requests;
+
+        Snapshot(State state, List<NetRequest> requests) {
+            this.state    = state;
+            this.requests = requests;
+        }
+
+        boolean isDone() {
+            return state == State.FINISHED || state == State.CANCELED;
+        }
+    }
+
+    /**
+     * Request key
+     */
+    private final NetRequestKey key;
+    /**
+     * NetRequest the entry has been created from
+     */
+    private final NetRequest netRequest;
+    /**
+     * Current snapshot
+     */
+    private final AtomicReference<Snapshot> snapshot;
+    /**
+     * Http request, built once the task starts
+     */
+    private volatile HttpRequest request;
+    /**
+     * Task performing the request
+     */
+    private volatile NetRequestTask task;
+
+    /**
+     * Constructor
+     * @param key Request key
+     * @param netRequest NetRequest
+     */
+    NetRequestEntry(NetRequestKey key, NetRequest netRequest) {
+        this.key        = key;
+        this.netRequest = netRequest;
+        this.snapshot   = new AtomicReference<>(
+                new Snapshot(State.QUEUED, Collections.singletonList(netRequest)));
+    }
+
+    /**
+     * Get request key
+     * @return Key
+     */
+    public NetRequestKey getKey() {
+        return key;
+    }
+
+    /**
+     * Get the NetRequest the entry has been created from
+     * @return NetRequest
+     */
+    public NetRequest getNetRequest() {
+        return netRequest;
+    }
+
+    /**
+     * Get every NetRequest waiting for the result
+     * @return Unmodifiable list
+     */
+    public List<NetRequest> getRequests() {
+        return snapshot.get().requests;
+    }
+
+    /**
+     * Get the highest priority among attached requests
+     * @return RequestPriority
+     */
+    public RequestPriority getPriority() {
+        RequestPriority priority = RequestPriority.PREFETCH;
+        for (NetRequest request : snapshot.get().requests) {
+            if (request.getPriority().ordinal() < priority.ordinal()) {
+                priority = request.getPriority();
+            }
+        }
+        return priority;
+    }
+
+    /**
+     * Get current state
+     * @return State
+     */
+    public State getState() {
+        return snapshot.get().state;
+    }
+
+    /**
+     * Get the http request
+     * @return HttpRequest, null while the task is queued
+     */
+    public HttpRequest getRequest() {
+        return request;
+    }
+
+    void setRequest(HttpRequest request) {
+        this.request = request;
+    }
+
+    /**
+     * Get the task performing the request
+     * @return NetRequestTask
+     */
+    public NetRequestTask getTask() {
+        return task;
+    }
+
+    void setTask(NetRequestTask task) {
+        this.task = task;
+    }
+
+    /**
+     * Attach an identical request so that it receives the result
+     * @param other NetRequest
+     * @return False if the entry is already finished or canceled
+     */
+    boolean attach(NetRequest other) {
+        while (true) {
+            Snapshot current = snapshot.get();
+            if (current.isDone()) {
+                return false;
+            }
+            if (current.requests.contains(other)) {
+                return true;
+            }
+            List<NetRequest> requests = new ArrayList<>(current.requests);
+            requests.add(other);
+            if (snapshot.compareAndSet(current,
+                    new Snapshot(current.state, Collections.unmodifiableList(requests)))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Detach a request, when it was the last one the entry is canceled
+     * @param other NetRequest
+     * @return True if other requests are still waiting for the result
+     */
+    boolean detach(NetRequest other) {
+        while (true) {
+            Snapshot current = snapshot.get();
+            if (current.isDone()) {
+                return false;
+            }
+            List<NetRequest> requests = new ArrayList<>(current.requests);
+            requests.remove(other);
+            Snapshot next = requests.isEmpty()
+                    ? new Snapshot(State.CANCELED, current.requests)
+                    : new Snapshot(current.state, Collections.unmodifiableList(requests));
+            if (snapshot.compareAndSet(current, next)) {
+                return !requests.isEmpty();
+            }
+        }
+    }
+
+    /**
+     * Move from queued to running
+     * @return False if the entry is no longer queued
+     */
+    boolean start() {
+        while (true) {
+            Snapshot current = snapshot.get();
+            if (current.state != State.QUEUED) {
+                return false;
+            }
+            if (snapshot.compareAndSet(current, new Snapshot(State.RUNNING, current.requests))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Mark the entry as finished, no request can be attached afterwards
+     * @return Requests to deliver the result to, null if already finished or canceled
+     */
+    List<NetRequest> finish() {
+        return moveToDone(State.FINISHED);
+    }
+
+    /**
+     * Mark the entry as canceled
+     * @return True if the entry was not already finished or canceled
+     */
+    boolean cancel() {
+        return moveToDone(State.CANCELED) != null;
+    }
+
+    /**
+     * Move to a terminal state
+     * @param state Terminal state
+     * @return Attached requests, null if already in a terminal state
+     */
+    private List<NetRequest> moveToDone(State state) {
+        while (true) {
+            Snapshot current = snapshot.get();
+            if (current.isDone()) {
+                return null;
+            }
+            if (snapshot.compareAndSet(current, new Snapshot(state, current.requests))) {
+                return current.requests;
+            }
+        }
+    }
+}
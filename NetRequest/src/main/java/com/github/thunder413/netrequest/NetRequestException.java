@@ -0,0 +1,43 @@
+package com.github.thunder413.netrequest;
+
+/**
+ * NetRequestException
+ * <p>
+ *     Thrown by the blocking and future based APIs when a request fails,
+ *     carries the same {@link NetError} a listener would have received
+ * </p>
+ * @version 1.4
+ * @author Thunder413
+ */
+@SuppressWarnings("WeakerAccess")
+public class NetRequestException extends Exception {
+    private static final long serialVersionUID = 1L;
+    /**
+     * Error
+     */
+    private final NetError error;
+    /**
+     * Constructor
+     * @param error NetError
+     */
+    public NetRequestException(NetError error) {
+        super(String.valueOf(error));
+        this.error = error;
+    }
+
+    /**
+     * Get error
+     * @return NetError
+     */
+    public NetError getError() {
+        return error;
+    }
+
+    /**
+     * Get error status
+     * @return NetErrorStatus
+     */
+    public NetErrorStatus getStatus() {
+        return error.getStatus();
+    }
+}
@@ -0,0 +1,189 @@
+package com.github.thunder413.netrequest;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * NetRequestIndex
+ * <p>Secondary index of the queued and running requests by an attribute such as the tag or
+ * the owning context, so that a group of requests is found in time proportional to its size.
+ * The attribute is captured when the request is added, changing it afterwards does not move
+ * the request to another group.
+ * </p>
+ * <p>The index is not locked, requests added and removed concurrently only contend when
+ * they share an attribute. With weak keys the index does not keep the attribute reachable,
+ * e.g. a destroyed Activity, the group is dropped once the attribute is collected and weak
+ * keys are compared by identity.
+ * </p>
+ * @author Thunder413
+ * @version 1.4
+ */
+final class NetRequestIndex {
+    /**
+     * Requests by attribute, wrapped in a {@link WeakKey} with weak keys
+     */
+    private final ConcurrentMap<Object, Set<NetRequest>> requests = new ConcurrentHashMap<>();
+    /**
+     * Attribute each request has been indexed with, wrapped as in {@link #requests}
+     */
+    private final ConcurrentMap<NetRequest, Object> keys = new ConcurrentHashMap<>();
+    /**
+     * Collected weak keys waiting to be dropped, null with strong keys
+     */
+    private final ReferenceQueue<Object> collected;
+
+    /**
+     * Weakly referenced attribute, equal to another one wrapping the same instance
+     */
+    private static final class WeakKey extends WeakReference<Object> {
+        private final int hash;
+
+        WeakKey(Object key, ReferenceQueue<Object> queue) {
+            super(key, queue);
+            hash = System.identityHashCode(key);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof WeakKey)) {
+                return false;
+            }
+            Object key = get();
+            return key != null && key == ((WeakKey) o).get();
+        }
+    }
+
+    /**
+     * Constructor
+     * @param weakKeys Whether or not attributes are weakly referenced
+     */
+    NetRequestIndex(boolean weakKeys) {
+        this.collected = weakKeys ? new ReferenceQueue<>() : null;
+    }
+
+    /**
+     * Index a request
+     * @param key Attribute, null requests are not indexed
+     * @param request NetRequest
+     */
+    void add(Object key, NetRequest request) {
+        if (key == null) {
+            return;
+        }
+        expunge();
+        Object indexKey = (collected != null) ? new WeakKey(key, collected) : key;
+        if (keys.putIfAbsent(request, indexKey) != null) {
+            return;
+        }
+        addToGroup(indexKey, request);
+    }
+
+    /**
+     * Add a request to the group of an attribute, retrying if the group is dropped meanwhile
+     * @param indexKey Attribute as stored in the map
+     * @param request NetRequest
+     */
+    private void addToGroup(Object indexKey, NetRequest request) {
+        while (true) {
+            Set<NetRequest> group = requests.get(indexKey);
+            if (group == null) {
+                Set<NetRequest> created = Collections.newSetFromMap(new ConcurrentHashMap<NetRequest, Boolean>());
+                group = requests.putIfAbsent(indexKey, created);
+                if (group == null) {
+                    group = created;
+                }
+            }
+            group.add(request);
+            if (requests.get(indexKey) == group) {
+                return;
+            }
+            // The group emptied and was dropped before the request was added, use a new one
+            group.remove(request);
+        }
+    }
+
+    /**
+     * Remove a request from the index
+     * @param request NetRequest
+     */
+    void remove(NetRequest request) {
+        Object indexKey = keys.remove(request);
+        if (indexKey != null) {
+            remove(indexKey, request);
+        }
+    }
+
+    /**
+     * Remove a request from the group of an attribute
+     * @param indexKey Attribute as stored in the map
+     * @param request NetRequest
+     */
+    private void remove(Object indexKey, NetRequest request) {
+        Set<NetRequest> group = requests.get(indexKey);
+        if (group != null && group.remove(request) && group.isEmpty()) {
+            dropGroup(indexKey, group);
+        }
+    }
+
+    /**
+     * Drop an empty group, the requests added to it meanwhile are moved to a new one
+     * @param indexKey Attribute as stored in the map
+     * @param group Group
+     */
+    private void dropGroup(Object indexKey, Set<NetRequest> group) {
+        if (!requests.remove(indexKey, group)) {
+            return;
+        }
+        for (NetRequest request : group) {
+            if (indexKey.equals(keys.get(request))) {
+                addToGroup(indexKey, request);
+                if (!indexKey.equals(keys.get(request))) {
+                    // Removed while being moved
+                    remove(indexKey, request);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the requests indexed with an attribute
+     * @param key Attribute
+     * @return Copy of the group, empty if none
+     */
+    List<NetRequest> get(Object key) {
+        if (key == null) {
+            return Collections.emptyList();
+        }
+        Set<NetRequest> group = requests.get((collected != null) ? new WeakKey(key, null) : key);
+        return (group == null) ? Collections.<NetRequest>emptyList() : new ArrayList<>(group);
+    }
+
+    /**
+     * Drop the groups whose attribute has been collected, their requests leave {@link #keys}
+     * when they are removed
+     */
+    private void expunge() {
+        if (collected == null) {
+            return;
+        }
+        Reference<?> reference;
+        while ((reference = collected.poll()) != null) {
+            requests.remove(reference);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.github.thunder413.netrequest;
+
+/**
+ * NetRequestKey
+ * <p>Immutable identity of a request, identical requests share the same key and are
+ * performed once. The key is a 128 bits MurmurHash3 (x64 variant) of the canonical form of
+ * the request, fed to the hash as the form is written so that it is never built as a String.
+ * </p>
+ * @author Thunder413
+ * @version 1.4
+ */
+@SuppressWarnings("WeakerAccess")
+public final class NetRequestKey {
+    /**
+     * High 64 bits
+     */
+    private final long high;
+    /**
+     * Low 64 bits
+     */
+    private final long low;
+
+    /**
+     * Constructor
+     * @param high High 64 bits
+     * @param low Low 64 bits
+     */
+    NetRequestKey(long high, long low) {
+        this.high = high;
+        this.low  = low;
+    }
+
+    /**
+     * Get high 64 bits
+     * @return Bits
+     */
+    public long getHigh() {
+        return high;
+    }
+
+    /**
+     * Get low 64 bits
+     * @return Bits
+     */
+    public long getLow() {
+        return low;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof NetRequestKey)) {
+            return false;
+        }
+        NetRequestKey other = (NetRequestKey) o;
+        return high == other.high && low == other.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) low;
+    }
+
+    /**
+     * Get the key as 32 hexadecimal characters
+     * @return Hex string
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(32);
+        appendHex(builder, high);
+        appendHex(builder, low);
+        return builder.toString();
+    }
+
+    /**
+     * Append 64 bits as 16 hexadecimal characters
+     * @param builder StringBuilder
+     * @param value Bits
+     */
+    private static void appendHex(StringBuilder builder, long value) {
+        for (int shift = 60; shift >= 0; shift -= 4) {
+            builder.append(Character.forDigit((int) (value >>> shift) & 0xf, 16));
+        }
+    }
+
+    /**
+     * Streaming MurmurHash3 x64 128 bits, characters are fed as UTF-8 with surrogates
+     * encoded individually
+     */
+    static final class Builder implements Appendable {
+        private static final long C1 = 0x87c37b91114253d5L;
+        private static final long C2 = 0x4cf5ad432745937fL;
+        private long h1;
+        private long h2;
+        private long k1;
+        private long k2;
+        private int position;
+        private long length;
+
+        /**
+         * Append characters
+         * @param chars Characters, null is appended as "null"
+         * @return Builder
+         */
+        @Override
+        public Builder append(CharSequence chars) {
+            if (chars == null) {
+                chars = "null";
+            }
+            return append(chars, 0, chars.length());
+        }
+
+        /**
+         * Append a range of characters
+         * @param chars Characters, null is appended as "null"
+         * @param start Start
+         * @param end End
+         * @return Builder
+         */
+        @Override
+        public Builder append(CharSequence chars, int start, int end) {
+            if (chars == null) {
+                chars = "null";
+            }
+            for (int i = start; i < end; i++) {
+                append(chars.charAt(i));
+            }
+            return this;
+        }
+
+        /**
+         * Append a character
+         * @param c Character
+         * @return Builder
+         */
+        @Override
+        public Builder append(char c) {
+            if (c < 0x80) {
+                appendByte(c);
+            } else if (c < 0x800) {
+                appendByte(0xc0 | (c >> 6));
+                appendByte(0x80 | (c & 0x3f));
+            } else {
+                appendByte(0xe0 | (c >> 12));
+                appendByte(0x80 | ((c >> 6) & 0x3f));
+                appendByte(0x80 | (c & 0x3f));
+            }
+            return this;
+        }
+
+        /**
+         * Append a byte, a block is mixed every 16 bytes
+         * @param b Byte
+         */
+        private void appendByte(int b) {
+            long value = b & 0xffL;
+            if (position < 8) {
+                k1 |= value << (position << 3);
+            } else {
+                k2 |= value << ((position - 8) << 3);
+            }
+            length++;
+            if (++position == 16) {
+                h1 ^= mixK1(k1);
+                h1 = Long.rotateLeft(h1, 27) + h2;
+                h1 = h1 * 5 + 0x52dce729;
+                h2 ^= mixK2(k2);
+                h2 = Long.rotateLeft(h2, 31) + h1;
+                h2 = h2 * 5 + 0x38495ab5;
+                k1 = 0;
+                k2 = 0;
+                position = 0;
+            }
+        }
+
+        /**
+         * Mix the remaining bytes and build the key
+         * @return NetRequestKey
+         */
+        NetRequestKey build() {
+            long r1 = h1;
+            long r2 = h2;
+            if (position > 8) {
+                r2 ^= mixK2(k2);
+            }
+            if (position > 0) {
+                r1 ^= mixK1(k1);
+            }
+            r1 ^= length;
+            r2 ^= length;
+            r1 += r2;
+            r2 += r1;
+            r1 = fmix(r1);
+            r2 = fmix(r2);
+            r1 += r2;
+            r2 += r1;
+            return new NetRequestKey(r1, r2);
+        }
+
+        private static long mixK1(long k) {
+            return Long.rotateLeft(k * C1, 31) * C2;
+        }
+
+        private static long mixK2(long k) {
+            return Long.rotateLeft(k * C2, 33) * C1;
+        }
+
+        private static long fmix(long k) {
+            k ^= k >>> 33;
+            k *= 0xff51afd7ed558ccdL;
+            k ^= k >>> 33;
+            k *= 0xc4ceb9fe1a85ec53L;
+            k ^= k >>> 33;
+            return k;
+        }
+    }
+}
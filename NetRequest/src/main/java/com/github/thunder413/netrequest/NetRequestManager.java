@@ -1,61 +1,173 @@
 package com.github.thunder413.netrequest;
 
-import android.os.AsyncTask;
-import android.support.v4.os.AsyncTaskCompat;
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.os.Bundle;
 import android.util.Log;
 
 import com.github.thunder413.netrequest.utils.HttpRequest;
-import com.github.thunder413.netrequest.utils.NetUtils;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * NetRequestManager
- * <p>This class handles the queue of HTTP requests created. It constructs and executes the various
- * tasks according to whether or not the parallel execution is activated.
+ * <p>This class handles the queue of HTTP requests created. It constructs the various tasks and
+ * hands them to the {@link NetRequestDispatcher} which executes them according to whether or not
+ * the parallel execution is activated and to the global and per host limits of in flight requests.
  *
  * One a request has been executed it is automatically cleared from queue.
  * It also allow the cancel of the request before or once the request has been executed
  * </p>
+ * <p>The registry is safe to use from any thread, each key maps to a single
+ * {@link NetRequestEntry} whose state is updated atomically</p>
  * @author Thunder413
- * @version 1.3
+ * @version 1.4
  */
 @SuppressWarnings("WeakerAccess")
 public class NetRequestManager {
+    /**
+     * Default connect timeout in milliseconds
+     */
+    public static final int DEFAULT_CONNECT_TIMEOUT = 15000;
+    /**
+     * Default read timeout in milliseconds
+     */
+    public static final int DEFAULT_READ_TIMEOUT = 30000;
     /**
      * Log tag
      */
     private final String LOG_TAG = "NetRequestManager";
     /**
-     * Instance
+     * Instance holder, initialized on first access by the class loader
      */
-    private static NetRequestManager _instance;
+    private static final class InstanceHolder {
+        private static final NetRequestManager INSTANCE = new NetRequestManager();
+    }
     /**
      * Enable disable
      */
-    private boolean debug;
+    private volatile boolean debug;
     /**
-     * Map used to handle list of queued NetRequest
+     * Registry of queued and running requests by key
      */
-    private Map<String,NetRequest> queue = new HashMap<>();
+    private final ConcurrentMap<NetRequestKey,NetRequestEntry> entries = new ConcurrentHashMap<>();
     /**
-     * Map used to handle list of running task
+     * Default parameters bind while initialization
      */
-    private Map<String,NetRequestTask> taskMap = new HashMap<>();
+    private final List<NetParameter> defaultParameters = new CopyOnWriteArrayList<>();
     /**
-     * Map used to hold list of http request
+     * Whether or not to perform parllele request
      */
-    private Map<String,HttpRequest> requestMap = new HashMap<>();
+    private volatile boolean parrallelRequestEnabled = true;
     /**
-     * Default parameters bind while initialization
+     * Dispatcher executing the tasks
      */
-    private ArrayList<NetParameter> defaultParameters = new ArrayList<>();
+    private final NetRequestDispatcher dispatcher = new NetRequestDispatcher();
     /**
-     * Whether or not to perform parllele request
+     * Time spent in each stage of the request pipeline
+     */
+    private final NetRequestMetrics metrics = new NetRequestMetrics();
+    /**
+     * Retry policy applied to requests without their own, null for no retry
+     */
+    private volatile RetryPolicy retryPolicy;
+    /**
+     * Maximum ratio of hedge requests to hedge candidates
+     */
+    private volatile float hedgeBudget = 0.05f;
+    /**
+     * Queued and running requests by tag
+     */
+    private final NetRequestIndex requestsByTag = new NetRequestIndex(false);
+    /**
+     * Queued and running requests by owning context, contexts are weakly referenced
+     */
+    private final NetRequestIndex requestsByContext = new NetRequestIndex(true);
+    /**
+     * Whether or not the activity lifecycle callbacks have been registered
+     */
+    private volatile boolean lifecycleCallbacksRegistered;
+    /**
+     * Cancel the requests of an activity as soon as it is destroyed because it finishes, not
+     * when it is recreated after a configuration change
      */
-    private boolean parrallelRequestEnabled = true;
+    final Application.ActivityLifecycleCallbacks lifecycleCallbacks = new Application.ActivityLifecycleCallbacks() {
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {}
+
+        @Override
+        public void onActivityStarted(Activity activity) {}
+
+        @Override
+        public void onActivityResumed(Activity activity) {}
+
+        @Override
+        public void onActivityPaused(Activity activity) {}
+
+        @Override
+        public void onActivityStopped(Activity activity) {}
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {}
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+            if (!activity.isFinishing() || activity.isChangingConfigurations()) {
+                // Recreated, e.g. after a rotation, its requests are still awaited
+                return;
+            }
+            int count = 0;
+            for (NetRequest request : requestsByContext.get(activity)) {
+                if (request.isCancelOnContextDie()) {
+                    request.cancel();
+                    count++;
+                }
+            }
+            if (count > 0) {
+                debug("OnActivityDestroyed >> " + count + " requests cancelled");
+            }
+        }
+    };
+    /**
+     * Connectivity state, created on first use from the context of a request
+     */
+    private volatile NetConnectivityMonitor connectivityMonitor;
+    /**
+     * Durable queue of requests loaded while offline, null when disabled
+     */
+    private volatile NetOfflineQueue offlineQueue;
+    /**
+     * Executor triggering the response listeners of requests without their own
+     */
+    private volatile Executor deliveryExecutor = NetDelivery.mainThread();
+    /**
+     * Default total time allowed for a request in milliseconds, 0 for none
+     */
+    private volatile long timeout;
+    /**
+     * Default connect timeout in milliseconds
+     */
+    private volatile int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    /**
+     * Default read timeout in milliseconds
+     */
+    private volatile int readTimeout = DEFAULT_READ_TIMEOUT;
+    /**
+     * Number of attempts eligible to hedging
+     */
+    private final AtomicLong hedgeCandidates = new AtomicLong();
+    /**
+     * Number of hedge requests sent
+     */
+    private final AtomicLong hedges = new AtomicLong();
     /**
      * Private constructor
      */
@@ -86,11 +198,7 @@ public class NetRequestManager {
      * @return Instance
      */
     public static NetRequestManager getInstance() {
-        if(_instance == null) {
-            _instance = new NetRequestManager();
-            _instance.setParallelRequestEnabled(true);
-        }
-        return  _instance;
+        return InstanceHolder.INSTANCE;
     }
     /**
      * Enable / Disable
@@ -105,36 +213,52 @@ public class NetRequestManager {
     }
     /**
      * Tell whether or not a given neRequest has been add to queue
-     * @param key A Hash created from request uri
-     * @return State True if the already queued False otherwise
+     * @param netRequest NetRequest
+     * @return State True if the already queued or running False otherwise
      */
-    private boolean isQueued(String key) {
-        return (queue.size() > 0 && queue.containsKey(key));
+    public boolean isQueued(NetRequest netRequest) {
+        NetRequestEntry entry = netRequest.getEntry();
+        return entry != null && entry.getRequests().contains(netRequest);
     }
     /**
-     * Tell whether or not a given neRequest task is being performed
-     * @param key A Hash created from request uri
-     * @return State True if the already running False otherwise
+     * Number of entries in the registry, queued or running
+     * @return Count
      */
-    private boolean isRunning(String key){
-        return (taskMap.size() > 0 && taskMap.containsKey(key) && taskMap.get(key).getStatus()!=null
-        && taskMap.get(key).getStatus() == AsyncTask.Status.RUNNING);
+    public int getEntryCount() {
+        return entries.size();
     }
     /**
-     * Build a hah for a given request
+     * Build the key of a given request from its canonical form and its response type,
+     * equivalent requests have the same key
      * @param netRequest NetRequest
-     * @return Hash key
+     * @return NetRequestKey
+     * @see NetRequestCanonicalizer
      */
-    private String getKey(NetRequest netRequest){
+    NetRequestKey getKey(NetRequest netRequest){
+        NetRequestKey.Builder builder = new NetRequestKey.Builder();
         if(netRequest.getRequestUri() != null) {
-            String uri = netRequest.getRequestUri();
-            uri = appendParameters(uri, getParameters());
-            uri = appendParameters(uri, netRequest.getParameters());
-            return NetUtils.md5(uri);
+            NetRequestCanonicalizer.canonicalize(builder, netRequest.getMethod(),
+                    netRequest.getRequestUri(), defaultParameters, netRequest.getParameterList());
         } else {
             error("getKey >> Uri is null setting default key");
-            return NetUtils.md5("default_key");
+            builder.append("default_key");
         }
+        // A tab is encoded in the canonical form, the response type can not be mistaken for it
+        return builder.append('\t').append(netRequest.getRequestDataType().name()).build();
+    }
+    /**
+     * Get the canonical form of a request including the default parameters, suitable as a
+     * cache key
+     * @param netRequest NetRequest
+     * @return Canonical form
+     * @see NetRequestCanonicalizer
+     */
+    public String getCanonicalForm(NetRequest netRequest) {
+        String uri = netRequest.getRequestUri();
+        StringBuilder out = new StringBuilder(uri.length() + 64);
+        NetRequestCanonicalizer.canonicalize(out, netRequest.getMethod(), uri,
+                defaultParameters, netRequest.getParameterList());
+        return out.toString();
     }
     /**
      * Append parameters to an uri
@@ -159,7 +283,7 @@ public class NetRequestManager {
      * @param netRequest NetRequest
      * @return HttpRequest
      */
-    private HttpRequest buildRequest(NetRequest netRequest) {
+    HttpRequest buildRequest(NetRequest netRequest) {
         HttpRequest request;
         // Create url string with default parameters
         String url = appendParameters(netRequest.getRequestUri(),
@@ -173,20 +297,338 @@ public class NetRequestManager {
             request = HttpRequest.get(url);
         }
         debug("BuildRequest >> Url >> "+url);
-        request.acceptGzipEncoding().uncompress(true);
+        request.connectTimeout(netRequest.getConnectTimeout() > 0 ? netRequest.getConnectTimeout() : connectTimeout)
+                .readTimeout(netRequest.getReadTimeout() > 0 ? netRequest.getReadTimeout() : readTimeout)
+                .acceptGzipEncoding().uncompress(true);
         return request;
     }
     /**
      * Execute request tast
-     * @param key Request key
+     * @param entry Registry entry
      */
-    private void executeQuery(String key){
-        if(isParallelRequestEnabled()) {
-            AsyncTaskCompat.executeParallel(taskMap.get(key), requestMap.get(key));
-        } else {
-            taskMap.get(key).execute(requestMap.get(key));
+    private void executeQuery(NetRequestEntry entry){
+        dispatcher.enqueue(entry.getTask());
+    }
+    /**
+     * Get the dispatcher executing the tasks
+     * @return NetRequestDispatcher
+     */
+    public NetRequestDispatcher getDispatcher() {
+        return dispatcher;
+    }
+    /**
+     * Set the maximum number of requests executed at the same time
+     * @param maxRequests Limit
+     */
+    public NetRequestManager setMaxRequests(int maxRequests) {
+        dispatcher.setMaxRequests(maxRequests);
+        return this;
+    }
+    /**
+     * Set the maximum number of requests waiting for a slot, once reached new requests are
+     * handled according to the overflow policy
+     * @param maxQueueDepth Limit, no limit by default
+     * @see #setOverflowPolicy(OverflowPolicy)
+     */
+    public NetRequestManager setMaxQueueDepth(int maxQueueDepth) {
+        dispatcher.setMaxQueueDepth(maxQueueDepth);
+        return this;
+    }
+    /**
+     * Set what happens to new requests once the queue is full
+     * @param overflowPolicy OverflowPolicy, default {@link OverflowPolicy#REJECT_NEWEST}
+     */
+    public NetRequestManager setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        dispatcher.setOverflowPolicy(overflowPolicy);
+        return this;
+    }
+    /**
+     * Number of requests waiting for a slot
+     * @return Count
+     */
+    public int getQueueDepth() {
+        return dispatcher.getQueuedCount();
+    }
+    /**
+     * Number of requests rejected or dropped because the queue was full
+     * @return Count
+     */
+    public long getRejectedCount() {
+        return dispatcher.getRejectedCount();
+    }
+    /**
+     * Set the maximum number of requests executed at the same time against a single host
+     * @param maxRequestsPerHost Limit
+     */
+    public NetRequestManager setMaxRequestsPerHost(int maxRequestsPerHost) {
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+        return this;
+    }
+
+    /**
+     * Set the retry policy applied to requests that do not have their own
+     * @param retryPolicy RetryPolicy, null to disable retries (default)
+     */
+    public NetRequestManager setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+    /**
+     * Get the default retry policy
+     * @return RetryPolicy, null when retries are disabled
+     */
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+    /**
+     * Set the source of the connectivity state checked before requests are performed,
+     * an {@link AndroidConnectivityMonitor} is created on first use by default
+     * @param connectivityMonitor NetConnectivityMonitor
+     */
+    public NetRequestManager setConnectivityMonitor(NetConnectivityMonitor connectivityMonitor) {
+        NetConnectivityMonitor previous = this.connectivityMonitor;
+        this.connectivityMonitor = connectivityMonitor;
+        NetOfflineQueue queue = offlineQueue;
+        if (queue != null) {
+            if (previous != null) {
+                previous.removeListener(queue.getConnectivityListener());
+            }
+            connectivityMonitor.addListener(queue.getConnectivityListener());
+        }
+        return this;
+    }
+    /**
+     * Get the source of the connectivity state
+     * @param context Context used to create the default monitor if none is set yet
+     * @return NetConnectivityMonitor
+     */
+    public NetConnectivityMonitor getConnectivityMonitor(Context context) {
+        NetConnectivityMonitor monitor = connectivityMonitor;
+        if (monitor == null) {
+            synchronized (this) {
+                monitor = connectivityMonitor;
+                if (monitor == null) {
+                    monitor = new AndroidConnectivityMonitor(context);
+                    connectivityMonitor = monitor;
+                }
+            }
+        }
+        return monitor;
+    }
+    /**
+     * Enable the durable offline queue, requests flagged with
+     * {@link NetRequest#setQueueWhenOffline(boolean)} and loaded without network are persisted
+     * and replayed once the network is back. Set the connectivity monitor first if a custom
+     * one is used
+     * @param offlineQueue NetOfflineQueue, null to disable (default)
+     */
+    public NetRequestManager setOfflineQueue(NetOfflineQueue offlineQueue) {
+        NetOfflineQueue previous = this.offlineQueue;
+        if (previous != null && connectivityMonitor != null) {
+            connectivityMonitor.removeListener(previous.getConnectivityListener());
+        }
+        this.offlineQueue = offlineQueue;
+        if (offlineQueue != null) {
+            getConnectivityMonitor(offlineQueue.getContext()).addListener(offlineQueue.getConnectivityListener());
+            // Replay what a previous run left
+            offlineQueue.replay();
+        }
+        return this;
+    }
+    /**
+     * Get the durable offline queue
+     * @return NetOfflineQueue, null when disabled
+     */
+    public NetOfflineQueue getOfflineQueue() {
+        return offlineQueue;
+    }
+    /**
+     * Set the default total time allowed for a request, from load to delivery
+     * @param timeout Timeout in milliseconds, 0 for none (default)
+     * @see NetRequest#setTimeout(long)
+     */
+    public NetRequestManager setTimeout(long timeout) {
+        this.timeout = Math.max(0, timeout);
+        return this;
+    }
+    /**
+     * Get the default total time allowed for a request
+     * @return Timeout in milliseconds, 0 for none
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+    /**
+     * Set the default connect timeout
+     * @param connectTimeout Timeout in milliseconds, default {@link #DEFAULT_CONNECT_TIMEOUT}
+     */
+    public NetRequestManager setConnectTimeout(int connectTimeout) {
+        if (connectTimeout <= 0) {
+            throw new IllegalArgumentException("Invalid connect timeout: " + connectTimeout);
+        }
+        this.connectTimeout = connectTimeout;
+        return this;
+    }
+    /**
+     * Set the default read timeout
+     * @param readTimeout Timeout in milliseconds, default {@link #DEFAULT_READ_TIMEOUT}
+     */
+    public NetRequestManager setReadTimeout(int readTimeout) {
+        if (readTimeout <= 0) {
+            throw new IllegalArgumentException("Invalid read timeout: " + readTimeout);
+        }
+        this.readTimeout = readTimeout;
+        return this;
+    }
+    /**
+     * Set the maximum ratio of hedge requests to hedged request attempts, default 0.05 so
+     * hedging adds at most 5% extra load
+     * @param hedgeBudget Ratio between 0 and 1
+     * @see NetRequest#setHedgingEnabled(boolean)
+     */
+    public NetRequestManager setHedgeBudget(float hedgeBudget) {
+        if (hedgeBudget < 0 || hedgeBudget > 1) {
+            throw new IllegalArgumentException("Invalid hedge budget: " + hedgeBudget);
+        }
+        this.hedgeBudget = hedgeBudget;
+        return this;
+    }
+    /**
+     * Get the number of hedge requests sent
+     * @return Count
+     */
+    public long getHedgeCount() {
+        return hedges.get();
+    }
+    /**
+     * Count an attempt eligible to hedging
+     * @return True if a hedge may be sent for it
+     */
+    boolean recordHedgeCandidate() {
+        hedgeCandidates.incrementAndGet();
+        return hedgeBudget > 0;
+    }
+    /**
+     * Take a hedge from the budget
+     * @return False if the budget is exhausted
+     */
+    boolean tryAcquireHedge() {
+        while (true) {
+            long current = hedges.get();
+            if (current + 1 > hedgeBudget * hedgeCandidates.get()) {
+                return false;
+            }
+            if (hedges.compareAndSet(current, current + 1)) {
+                return true;
+            }
         }
     }
+    /**
+     * Get time spent by requests in the I/O and parse stages
+     * @return NetRequestMetrics
+     */
+    public NetRequestMetrics getMetrics() {
+        return metrics;
+    }
+    /**
+     * Set the executor parsing the responses, the default one is sized to the available
+     * processors so that slow parses never hold a connection slot
+     * @param executorService ExecutorService, null to restore the default pool
+     */
+    public NetRequestManager setParseExecutorService(ExecutorService executorService) {
+        dispatcher.setParseExecutorService(executorService);
+        return this;
+    }
+    /**
+     * Set the executor triggering the response listeners of requests without their own,
+     * results are delivered on the main thread by default
+     * @param deliveryExecutor Executor, see {@link NetDelivery} for ready made ones,
+     *                         null to restore the main thread delivery
+     */
+    public NetRequestManager setDeliveryExecutor(Executor deliveryExecutor) {
+        this.deliveryExecutor = (deliveryExecutor != null) ? deliveryExecutor : NetDelivery.mainThread();
+        return this;
+    }
+    /**
+     * Get the executor triggering the response listeners of requests without their own
+     * @return Executor
+     */
+    public Executor getDeliveryExecutor() {
+        return deliveryExecutor;
+    }
+    /**
+     * Set the executor performing the requests
+     * @param executorService ExecutorService, see {@link NetExecutors} for ready made ones,
+     *                        null to restore the default pool
+     */
+    public NetRequestManager setExecutorService(ExecutorService executorService) {
+        dispatcher.setExecutorService(executorService);
+        return this;
+    }
+    /**
+     * Enable / Disable adaptive per host limits, the number of requests in flight against each
+     * host is then raised while round trips stay low and lowered when they inflate or the host
+     * answers with errors
+     * @param enabled State
+     */
+    public NetRequestManager setAdaptiveConcurrencyEnabled(boolean enabled) {
+        dispatcher.setAdaptiveConcurrencyEnabled(enabled);
+        return this;
+    }
+    /**
+     * Get the current limit of in flight requests for a host, for monitoring
+     * @param host Host
+     * @return Limit
+     */
+    public int getConcurrencyLimit(String host) {
+        return dispatcher.getConcurrencyLimit(host);
+    }
+    /**
+     * Enable per host circuit breakers, requests to a host whose breaker is open fail
+     * immediately with {@link NetErrorStatus#CIRCUIT_OPEN}
+     * @param policy CircuitBreakerPolicy, null to disable circuit breakers (default)
+     */
+    public NetRequestManager setCircuitBreakerPolicy(CircuitBreakerPolicy policy) {
+        dispatcher.setCircuitBreakerPolicy(policy);
+        return this;
+    }
+    /**
+     * Get the circuit breaker state of a host, for monitoring
+     * @param host Host
+     * @return State, null when circuit breakers are disabled
+     */
+    public NetCircuitBreaker.State getCircuitState(String host) {
+        NetCircuitBreaker circuitBreaker = dispatcher.getCircuitBreaker(host);
+        return circuitBreaker == null ? null : circuitBreaker.getState();
+    }
+    /**
+     * Limit the rate at which requests to a host are started, requests over the limit
+     * wait in the queue until a token is available
+     * @param host Host, as found in the request uri
+     * @param requestsPerSecond Sustained rate
+     * @param burst Number of requests that can be started at once after an idle period
+     */
+    public NetRequestManager setRateLimit(String host, double requestsPerSecond, int burst) {
+        dispatcher.setRateLimiter(host, new NetRateLimiter(requestsPerSecond, burst));
+        return this;
+    }
+    /**
+     * Remove the rate limit of a host
+     * @param host Host
+     */
+    public NetRequestManager removeRateLimit(String host) {
+        dispatcher.setRateLimiter(host, null);
+        return this;
+    }
+    /**
+     * Set how long a queued request has to wait to gain one priority level, so that low
+     * priority requests are never starved
+     * @param millis Interval in milliseconds
+     */
+    public NetRequestManager setPriorityAgingInterval(long millis) {
+        dispatcher.setPriorityAgingInterval(millis);
+        return this;
+    }
 
     /**
      * Add a request parameter
@@ -212,14 +654,14 @@ public class NetRequestManager {
      * @return String serialized
      */
     public String getParameters(){
-        String params = "";
-        for(int i = 0; i < defaultParameters.size(); i++){
-            params += defaultParameters.get(i).toString();
-            if(i+1 < defaultParameters.size()) {
-                params+="&";
+        StringBuilder params = new StringBuilder();
+        for(NetParameter parameter : defaultParameters){
+            if(params.length() > 0) {
+                params.append("&");
             }
+            params.append(parameter.toString());
         }
-        return params;
+        return params.toString();
     }
 
     /**
@@ -228,6 +670,7 @@ public class NetRequestManager {
      */
     public NetRequestManager setParallelRequestEnabled(boolean enabled){
         parrallelRequestEnabled = enabled;
+        dispatcher.setParallel(enabled);
         return this;
     }
 
@@ -240,48 +683,230 @@ public class NetRequestManager {
     }
     /**
      * Add a net request to a queue
+     * <p>If an identical GET request is already queued or running with the same timeouts,
+     * retry policy and hedging, the net request is attached to it and receives the same
+     * response without performing another network call</p>
      * @param netRequest Net request
      */
     public void addToQueue(NetRequest netRequest) {
-        String key = getKey(netRequest);
-        if(!isQueued(key)) {
-            queue.put(key,netRequest);
-            if(!isRunning(key)) {
-                requestMap.put(key, buildRequest(netRequest));
-                taskMap.put(key, new NetRequestTask(netRequest));
-                executeQuery(key);
-            } else {
-                debug("AddToQueue >> Already running >> ("+netRequest.getRequestUri()+")");
+        NetRequestKey key = getKey(netRequest);
+        if(netRequest.getMethod() != RequestMethod.GET) {
+            // Writes are performed as many times as they are loaded
+            executeAlone(key, netRequest);
+            return;
+        }
+        while (true) {
+            NetRequestEntry existing = entries.get(key);
+            if(existing != null && !hasSamePolicies(existing.getNetRequest(), netRequest)) {
+                debug("AddToQueue >> Identical request with other policies, not shared >> ("+netRequest.getRequestUri()+")");
+                executeAlone(key, netRequest);
+                return;
+            }
+            if(existing != null) {
+                // Registered before attaching so the unregister pass of the delivery sees it
+                register(netRequest, existing);
+                if(existing.attach(netRequest)) {
+                    debug("AddToQueue >> Already queued or running, attaching listener >> ("+netRequest.getRequestUri()+")");
+                    updatePriority(existing);
+                    return;
+                }
+                unregister(netRequest, existing);
+            }
+            NetRequestEntry entry = new NetRequestEntry(key, netRequest);
+            boolean registered = (existing == null)
+                    ? entries.putIfAbsent(key, entry) == null
+                    : entries.replace(key, existing, entry);
+            if(registered) {
+                register(netRequest, entry);
+                entry.setTask(new NetRequestTask(entry));
+                executeQuery(entry);
+                return;
             }
-        } else {
-            debug("AddToQueue >> Already queued and probably running shortly ");
         }
     }
+    /**
+     * Perform a request in an entry of its own, kept out of the registry so that no other
+     * request is attached to it
+     * @param key Request key
+     * @param netRequest Net request
+     */
+    private void executeAlone(NetRequestKey key, NetRequest netRequest) {
+        NetRequestEntry entry = new NetRequestEntry(key, netRequest);
+        register(netRequest, entry);
+        entry.setTask(new NetRequestTask(entry));
+        executeQuery(entry);
+    }
+    /**
+     * Tell whether or not a request may share the task performing another one, the task
+     * applies the timeouts, retry policy and hedging of the request it was created for
+     * @param performed Request the task was created for
+     * @param netRequest Request to attach
+     * @return True if their per request policies match
+     */
+    private static boolean hasSamePolicies(NetRequest performed, NetRequest netRequest) {
+        return performed.getTimeout() == netRequest.getTimeout()
+                && performed.getConnectTimeout() == netRequest.getConnectTimeout()
+                && performed.getReadTimeout() == netRequest.getReadTimeout()
+                && performed.getRetryPolicy() == netRequest.getRetryPolicy()
+                && performed.isHedgingEnabled() == netRequest.isHedgingEnabled()
+                && performed.getHedgeDelay() == netRequest.getHedgeDelay();
+    }
 
 
+    /**
+     * Perform a net request on the calling thread, it is neither queued nor shared with
+     * identical requests
+     * @param netRequest Net request
+     * @return NetResponse
+     * @throws NetRequestException When the request fails
+     */
+    NetResponse execute(NetRequest netRequest) throws NetRequestException {
+        NetRequestEntry entry = new NetRequestEntry(getKey(netRequest), netRequest);
+        NetRequestTask task = new NetRequestTask(entry);
+        entry.setTask(task);
+        if(!dispatcher.admitSync(task)) {
+            throw new NetRequestException(new NetError(NetErrorStatus.QUEUE_FULL, netRequest.getTag()));
+        }
+        NetCircuitBreaker circuitBreaker = dispatcher.getCircuitBreaker(task.getHost());
+        long permit = (circuitBreaker != null) ? circuitBreaker.tryAcquire() : NetCircuitBreaker.CALL;
+        if(permit == NetCircuitBreaker.REFUSED) {
+            throw new NetRequestException(new NetError(NetErrorStatus.CIRCUIT_OPEN, netRequest.getTag()));
+        }
+        task.setCircuitPermit(permit);
+        try {
+            return task.executeNow();
+        } finally {
+            dispatcher.recordOutcome(task);
+        }
+    }
+    /**
+     * Move a queued request according to its new priority, no effect once started
+     * @param netRequest NetRequest
+     */
+    void updatePriority(NetRequest netRequest) {
+        NetRequestEntry entry = netRequest.getEntry();
+        if(entry != null && entry.getRequests().contains(netRequest)) {
+            updatePriority(entry);
+        }
+    }
+    /**
+     * Apply the highest priority of the entry attached requests to its task
+     * @param entry NetRequestEntry
+     */
+    private void updatePriority(NetRequestEntry entry) {
+        NetRequestTask task = entry.getTask();
+        if(task != null && dispatcher.reprioritize(task, entry.getPriority())) {
+            debug("UpdatePriority >> "+entry.getPriority());
+        }
+    }
     /**
      * Cancel a netRequest
+     * <p>When identical requests share the same task, only this one is detached, the task keeps
+     * running for the others</p>
      * @param netRequest NetRequest
      */
     public void cancel(NetRequest netRequest){
-        String key = getKey(netRequest);
-        if (isRunning(key)){
-            NetRequestTask task = taskMap.get(key);
-            task.cancel(true);
+        NetRequestEntry entry = netRequest.getEntry();
+        if (entry == null) {
+            return;
+        }
+        unregister(netRequest, entry);
+        if (entry.detach(netRequest)){
+            return;
+        }
+        // Last request detached, the entry is now canceled
+        NetRequestTask task = entry.getTask();
+        if(task != null) {
+            // Disconnect first so that the slot is not handed to the task again
+            task.cancel();
+            dispatcher.cancel(task);
+        }
+        removeFromQueue(entry);
+    }
+    /**
+     * Cancel every queued or running request with the given tag
+     * @param tag Tag
+     * @return Number of requests cancelled
+     * @see NetRequest#setTag(Object)
+     */
+    public int cancelAll(Object tag) {
+        return cancelAll(requestsByTag.get(tag));
+    }
+    /**
+     * Cancel every queued or running request created with the given context
+     * @param context Context
+     * @return Number of requests cancelled
+     */
+    public int cancelAll(Context context) {
+        return cancelAll(requestsByContext.get(context));
+    }
+    /**
+     * Cancel a group of requests
+     * @param requests Requests
+     * @return Number of requests cancelled
+     */
+    private int cancelAll(List<NetRequest> requests) {
+        debug("CancelAll >> " + requests.size() + " requests");
+        for (NetRequest request : requests) {
+            request.cancel();
+        }
+        return requests.size();
+    }
+    /**
+     * Index a request once it waits for the result of an entry
+     * @param netRequest NetRequest
+     * @param entry NetRequestEntry
+     */
+    private void register(NetRequest netRequest, NetRequestEntry entry) {
+        netRequest.setEntry(entry);
+        netRequest.setKey(entry.getKey());
+        if (netRequest.hasTag()) {
+            // The default tag is a timestamp, unrelated requests may share it
+            requestsByTag.add(netRequest.getTag(), netRequest);
+        }
+        Context context = netRequest.getContext();
+        requestsByContext.add(context, netRequest);
+        if (!lifecycleCallbacksRegistered && context instanceof Activity) {
+            registerLifecycleCallbacks(((Activity) context).getApplication());
+        }
+    }
+    /**
+     * Register the activity lifecycle callbacks once
+     * @param application Application
+     */
+    private synchronized void registerLifecycleCallbacks(Application application) {
+        if (lifecycleCallbacksRegistered || application == null) {
+            return;
+        }
+        application.registerActivityLifecycleCallbacks(lifecycleCallbacks);
+        lifecycleCallbacksRegistered = true;
+    }
+    /**
+     * Remove a request from the indexes once it no longer waits for the result of an entry
+     * @param netRequest NetRequest
+     * @param entry NetRequestEntry
+     */
+    void unregister(NetRequest netRequest, NetRequestEntry entry) {
+        if (netRequest.clearEntry(entry)) {
+            requestsByTag.remove(netRequest);
+            requestsByContext.remove(netRequest);
         }
-        removeFromQueue(netRequest);
     }
     /**
      * Remove a request from queue
      * @param netRequest NetRequest
      */
     public void removeFromQueue(NetRequest netRequest) {
-        String key = getKey(netRequest);
-        if(queue.containsKey(key))
-            queue.remove(key);
-        if(requestMap.containsKey(key))
-            requestMap.remove(key);
-        if(taskMap.containsKey(key))
-            taskMap.remove(key);
-    }
-}
\ No newline at end of file
+        NetRequestEntry entry = netRequest.getEntry();
+        if(entry != null && entry.getRequests().contains(netRequest)) {
+            removeFromQueue(entry);
+        }
+    }
+    /**
+     * Remove an entry from the registry, a newer entry registered under the same key is kept
+     * @param entry NetRequestEntry
+     */
+    void removeFromQueue(NetRequestEntry entry) {
+        entries.remove(entry.getKey(), entry);
+    }
+}
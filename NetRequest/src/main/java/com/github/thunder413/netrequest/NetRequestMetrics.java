@@ -0,0 +1,93 @@
+package com.github.thunder413.netrequest;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * NetRequestMetrics
+ * <p>Time spent by requests in each stage of the pipeline, the I/O stage (send and
+ * receive) and the parse stage. Counters are cumulative since the manager creation
+ * and can be read from any thread.
+ * </p>
+ * @author Thunder413
+ * @version 1.4
+ */
+@SuppressWarnings("WeakerAccess")
+public class NetRequestMetrics {
+    /**
+     * Completed I/O stages
+     */
+    private final AtomicLong ioCount = new AtomicLong();
+    /**
+     * Cumulative I/O stage time in nanoseconds
+     */
+    private final AtomicLong ioTime = new AtomicLong();
+    /**
+     * Completed parse stages
+     */
+    private final AtomicLong parseCount = new AtomicLong();
+    /**
+     * Cumulative parse stage time in nanoseconds
+     */
+    private final AtomicLong parseTime = new AtomicLong();
+
+    /**
+     * Constructor
+     */
+    NetRequestMetrics() {}
+
+    /**
+     * Record a completed I/O stage
+     * @param nanos Duration in nanoseconds
+     */
+    void recordIo(long nanos) {
+        ioCount.incrementAndGet();
+        ioTime.addAndGet(nanos);
+    }
+
+    /**
+     * Record a completed parse stage
+     * @param nanos Duration in nanoseconds
+     */
+    void recordParse(long nanos) {
+        parseCount.incrementAndGet();
+        parseTime.addAndGet(nanos);
+    }
+
+    /**
+     * Number of completed I/O stages
+     * @return Count
+     */
+    public long getIoCount() {
+        return ioCount.get();
+    }
+
+    /**
+     * Total time spent in the I/O stage
+     * @return Time in milliseconds
+     */
+    public long getIoTime() {
+        return TimeUnit.NANOSECONDS.toMillis(ioTime.get());
+    }
+
+    /**
+     * Number of completed parse stages
+     * @return Count
+     */
+    public long getParseCount() {
+        return parseCount.get();
+    }
+
+    /**
+     * Total time spent in the parse stage
+     * @return Time in milliseconds
+     */
+    public long getParseTime() {
+        return TimeUnit.NANOSECONDS.toMillis(parseTime.get());
+    }
+
+    @Override
+    public String toString() {
+        return "io=" + getIoCount() + "/" + getIoTime() + "ms parse=" + getParseCount() + "/" + getParseTime() + "ms";
+    }
+}
@@ -1,19 +1,32 @@
 package com.github.thunder413.netrequest;
 
+import android.app.Activity;
 import android.content.Context;
-import android.os.AsyncTask;
-import android.support.v7.app.AppCompatActivity;
 import android.util.Log;
 
 import com.github.thunder413.netrequest.utils.HttpRequest;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonIOException;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
 
 import org.w3c.dom.Document;
 import org.xml.sax.InputSource;
 
+import java.io.IOException;
 import java.io.StringReader;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -25,24 +38,80 @@ import javax.xml.parsers.DocumentBuilderFactory;
  * according to result status if RequestStatus#SUCCESS it will trigger the
  * {OnNetResponse#onResponseCompleted} method  otherwise {OnNetResponse#onResponseError}
  * </p>
+ * <p>The task is run in two stages. The I/O stage sends the request and reads the body on
+ * one of the {@link NetRequestDispatcher} worker threads, then releases its slot and hands
+ * the body to the parse stage, run on a pool sized to the available processors. Json bodies
+ * are parsed while they are read from the connection instead, so the body is never held as
+ * a String next to the parsed tree. The listener is triggered through the delivery executor, the main thread by default</p>
+ * <p>Identical requests added while the task is queued or running are attached to its
+ * {@link NetRequestEntry}, the network call and the parse are performed once and every
+ * attached request receives the result through its own listener and with its own tag</p>
  *
  * @author thunder413
- * @version 1.3
+ * @version 1.4
  */
 @SuppressWarnings("WeakerAccess")
-public class NetRequestTask extends AsyncTask<HttpRequest,Void,NetErrorStatus> {
+public class NetRequestTask implements Runnable {
     /**
      * Log tag
      */
     private static final String LOG_TAG = "NetRequestTask";
     /**
-     * Current http request
+     * Current http request, built when the task starts and replaced on each retry
      */
-    private HttpRequest request;
+    private volatile HttpRequest request;
+    /**
+     * Duplicate http request sent when the request is hedged
+     */
+    private volatile HttpRequest hedgeRequest;
+    /**
+     * Http status code of the last attempt, 0 when no response was received
+     */
+    private volatile int responseCode;
+    /**
+     * Number of attempts performed
+     */
+    private volatile int attempts;
+    /**
+     * Whether or not a hedge request has been sent for the last attempt
+     */
+    private volatile boolean hedged;
+    /**
+     * Whether or not the task waits for or performs a retry, the entry is already started
+     */
+    private volatile boolean retrying;
+    /**
+     * Request host, used by the dispatcher to enforce per host limits
+     */
+    private final String host;
+    /**
+     * Time the request must be completed by in nanoseconds, 0 when there is no deadline
+     */
+    private final long deadline;
     /**
      * Force cancel
      */
-    private boolean canceled;
+    private volatile boolean canceled;
+    /**
+     * Whether or not the task has been started by the dispatcher
+     */
+    private volatile boolean running;
+    /**
+     * Priority used by the dispatcher to order the ready queue
+     */
+    private RequestPriority priority;
+    /**
+     * Queue rank, enqueue time shifted by the priority aging, lower ranks start first
+     */
+    private long queueRank;
+    /**
+     * Enqueue sequence, breaks ties between equal ranks
+     */
+    private long queueSequence;
+    /**
+     * Pending execution, used to interrupt the worker on cancel
+     */
+    private volatile Future<?> future;
     /**
      * Server response text
      */
@@ -58,19 +127,168 @@ public class NetRequestTask extends AsyncTask<HttpRequest,Void,NetErrorStatus> {
     /**
      * Task status
      */
-    private NetErrorStatus status = NetErrorStatus.ERROR;
+    private volatile NetErrorStatus status = NetErrorStatus.ERROR;
+    /**
+     * Time spent in the I/O stage in nanoseconds
+     */
+    private volatile long ioTime;
+    /**
+     * Time spent in the last attempt in nanoseconds, 0 when the last run performed none
+     */
+    private volatile long attemptTime;
     /**
-     * NetRequest
+     * Circuit breaker permit of the current run
+     */
+    private volatile long circuitPermit = NetCircuitBreaker.CALL;
+    /**
+     * Time spent in the parse stage in nanoseconds, json is parsed while it is read so its
+     * parse time also covers reading the body
+     */
+    private volatile long parseTime;
+    /**
+     * Registry entry
+     */
+    private final NetRequestEntry entry;
+    /**
+     * NetRequest the task has been built from
      */
     private final NetRequest netRequest;
 
 
     /**
-     * Constructor
-     * @param netRequest NetRequest
+     * Constructor, the http request is only built once the task starts so that a queued
+     * task holds the request description only
+     * @param entry Registry entry
+     */
+    public NetRequestTask(NetRequestEntry entry) {
+        this.entry       = entry;
+        this.netRequest  = entry.getNetRequest();
+        this.host        = parseHost(netRequest.getRequestUri());
+        long timeout     = netRequest.getTimeout() > 0
+                ? netRequest.getTimeout() : NetRequestManager.getInstance().getTimeout();
+        this.deadline    = (timeout > 0) ? System.nanoTime() + timeout * 1000000L : 0;
+    }
+    /**
+     * Get the host of an uri, the authority without user info and port
+     * @param uri Uri
+     * @return Lower-cased host, empty when the uri has none
+     */
+    static String parseHost(String uri) {
+        int schemeEnd = (uri == null) ? -1 : uri.indexOf("://");
+        if (schemeEnd <= 0) {
+            return "";
+        }
+        int start = schemeEnd + 3;
+        int end   = start;
+        while (end < uri.length() && "/?#".indexOf(uri.charAt(end)) < 0) {
+            end++;
+        }
+        int at = uri.lastIndexOf('@', end - 1);
+        if (at >= start) {
+            start = at + 1;
+        }
+        // The port follows the last colon, unless it is part of an IPv6 literal
+        int colon = uri.lastIndexOf(':', end - 1);
+        if (colon >= start && colon > uri.lastIndexOf(']', end - 1)) {
+            end = colon;
+        }
+        return uri.substring(start, end).toLowerCase(Locale.US);
+    }
+    /**
+     * Check if the deadline of the request elapsed
+     * @return True if expired
+     */
+    boolean isExpired() {
+        return deadline != 0 && deadline - System.nanoTime() <= 0;
+    }
+    /**
+     * Get the time left before the deadline
+     * @return Time in milliseconds, {@link Long#MAX_VALUE} when there is no deadline
+     */
+    long getRemainingTime() {
+        return (deadline == 0) ? Long.MAX_VALUE : Math.max(0, (deadline - System.nanoTime()) / 1000000L);
+    }
+    /**
+     * Get request host
+     * @return Host
+     */
+    public String getHost() {
+        return host;
+    }
+    /**
+     * Get the priority the task has been queued with
+     * @return RequestPriority
+     */
+    public RequestPriority getPriority() {
+        return priority;
+    }
+    void setPriority(RequestPriority priority) {
+        this.priority = priority;
+    }
+    long getQueueRank() {
+        return queueRank;
+    }
+    void setQueueRank(long queueRank) {
+        this.queueRank = queueRank;
+    }
+    long getQueueSequence() {
+        return queueSequence;
+    }
+    void setQueueSequence(long queueSequence) {
+        this.queueSequence = queueSequence;
+    }
+    /**
+     * Get registry entry
+     * @return NetRequestEntry
+     */
+    public NetRequestEntry getEntry() {
+        return entry;
+    }
+    /**
+     * Tell whether or not the task has been started
+     * @return True if running
+     */
+    public boolean isRunning() {
+        return running;
+    }
+    /**
+     * Tell whether or not the task has been canceled
+     * @return True if canceled
+     */
+    public boolean isCancelled() {
+        return canceled;
+    }
+    /**
+     * Submit the task to the executor chosen by the dispatcher
+     * @param executorService Executor
+     */
+    void executeOn(ExecutorService executorService) {
+        running = true;
+        future  = executorService.submit(this);
+    }
+    /**
+     * Called when the dispatcher refused to run the task, the error is delivered without
+     * running it
+     * @param result Status to deliver
+     */
+    void reject(NetErrorStatus result) {
+        running = false;
+        status  = result;
+        error("Run >> Rejected >> " + result);
+        deliver(result);
+    }
+    /**
+     * Cancel the task, disconnecting the underlying http request if already started
      */
-    public NetRequestTask(NetRequest netRequest) {
-        this.netRequest  = netRequest;
+    public void cancel() {
+        if(canceled) {
+            return;
+        }
+        onCancelled();
+        Future<?> pending = future;
+        if(pending != null) {
+            pending.cancel(true);
+        }
     }
     /**
      * Print a debug message
@@ -94,20 +312,162 @@ public class NetRequestTask extends AsyncTask<HttpRequest,Void,NetErrorStatus> {
     }
 
     @Override
-    protected void onPreExecute() {
-        super.onPreExecute();
-        debug("OnPreExecute");
+    public void run() {
+        debug("Run");
+        NetRequestDispatcher dispatcher = NetRequestManager.getInstance().getDispatcher();
+        boolean released = false;
+        try {
+            if(!retrying && !entry.start()) {
+                debug("Run >> Entry no longer queued");
+                return;
+            }
+            long retryDelay = readResponse();
+            // The connection is done, free the I/O slot before parsing or waiting for a retry
+            running  = false;
+            released = true;
+            dispatcher.finished(this);
+            if(retryDelay >= 0) {
+                scheduleRetry(retryDelay);
+            } else if(needsParse()) {
+                dispatcher.parse(new Runnable() {
+                    @Override
+                    public void run() {
+                        parseResponse();
+                        deliver(status);
+                    }
+                });
+            } else {
+                deliver(status);
+            }
+        } finally {
+            if(!released) {
+                running = false;
+                dispatcher.finished(this);
+            }
+        }
     }
 
-    @Override
-    protected void onCancelled() {
-        super.onCancelled();
+    /**
+     * Wait for the next attempt without holding a dispatcher slot, the task then goes through
+     * the ready queue again
+     * @param delay Delay in milliseconds
+     */
+    private void scheduleRetry(long delay) {
+        retrying = true;
+        NetRequestManager.getInstance().getDispatcher().retry(this, delay);
+    }
+
+    /**
+     * Post the result to the delivery executor of the request
+     * @param result Status
+     */
+    private void deliver(final NetErrorStatus result) {
+        getDeliveryExecutor(netRequest).execute(new Runnable() {
+            @Override
+            public void run() {
+                onPostExecute(result);
+            }
+        });
+    }
+
+    /**
+     * Perform the request on the calling thread, bypassing the dispatcher and the main
+     * thread delivery
+     * @return NetResponse
+     * @throws NetRequestException When the request fails or is cancelled
+     */
+    NetResponse executeNow() throws NetRequestException {
+        running = true;
+        try {
+            NetErrorStatus result = NetErrorStatus.CANCELED;
+            if(entry.start()) {
+                long retryDelay;
+                while ((retryDelay = readResponse()) >= 0) {
+                    // The calling thread holds no dispatcher slot, it waits for the retry itself
+                    try {
+                        Thread.sleep(retryDelay);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                if(needsParse()) {
+                    parseResponse();
+                }
+                result = status;
+            }
+            if(result != NetErrorStatus.SUCCESS || entry.finish() == null) {
+                throw new NetRequestException(new NetError(
+                        result == NetErrorStatus.SUCCESS ? NetErrorStatus.CANCELED : result,
+                        netRequest.getTag(), responseCode));
+            }
+            return new NetResponse(responseText, netRequest.getTag(),
+                    netRequest.getRequestDataType(), getData(netRequest.getRequestDataType()));
+        } finally {
+            running = false;
+        }
+    }
+
+    /**
+     * Get task status
+     * @return NetErrorStatus
+     */
+    public NetErrorStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * Get time spent in the I/O stage
+     * @return Time in nanoseconds
+     */
+    public long getIoTime() {
+        return ioTime;
+    }
+
+    /**
+     * Get time spent in the last attempt, retry backoffs are not included
+     * @return Time in nanoseconds, 0 when the last run performed no attempt
+     */
+    long getAttemptTime() {
+        return attemptTime;
+    }
+
+    /**
+     * Get the circuit breaker permit of the current run
+     * @return Permit
+     */
+    long getCircuitPermit() {
+        return circuitPermit;
+    }
+
+    /**
+     * Set the circuit breaker permit of the current run, given back with its outcome
+     * @param circuitPermit Permit
+     */
+    void setCircuitPermit(long circuitPermit) {
+        this.circuitPermit = circuitPermit;
+    }
+
+    /**
+     * Get time spent in the parse stage
+     * @return Time in nanoseconds
+     */
+    public long getParseTime() {
+        return parseTime;
+    }
+
+    /**
+     * Mark the task as canceled and disconnect the http request
+     */
+    private void onCancelled() {
         debug("OnCancelled");
         canceled = true;
         try {
             if(request != null) {
                 request.disconnect();
             }
+            if(hedgeRequest != null) {
+                hedgeRequest.disconnect();
+            }
             error("Cancel >> HttpRequest >> disconnected");
         } catch (Exception e){
             if(NetRequestManager.getInstance().isDebug()) {
@@ -119,22 +479,38 @@ public class NetRequestTask extends AsyncTask<HttpRequest,Void,NetErrorStatus> {
     }
 
     /**
-     * Parse content to json
-     * @param content Content
-     * @return JsonObject
+     * Parse the response body to json straight from the connection, without holding the
+     * body as a String. Read failures are thrown so they are reported as such and not as
+     * parse errors
+     * @param request HttpRequest
+     * @return JsonObject, null if the body is not a json object
+     * @throws JsonIOException When reading the body fails
      */
-    private JsonObject getAsJson(String content){
+    private JsonObject readJson(HttpRequest request) throws JsonIOException {
+        JsonReader reader = new JsonReader(request.reader());
         try {
-            return new JsonParser().parse(content).getAsJsonObject();
-        } catch (JsonParseException e){
+            JsonElement element = new JsonParser().parse(reader);
+            if(!element.isJsonObject() || reader.peek() != JsonToken.END_DOCUMENT) {
+                error("DoInBackground >> Server response is not a json object");
+                return null;
+            }
+            return element.getAsJsonObject();
+        } catch (JsonSyntaxException | MalformedJsonException e) {
             if (NetRequestManager.getInstance().isDebug()) {
                 // Debug
                 error("DoInBackground >> Server response parse error");
                 e.printStackTrace();
             }
-
+            return null;
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        } finally {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                // Ignored, the connection is released anyway
+            }
         }
-        return null;
     }
 
     /**
@@ -157,53 +533,286 @@ public class NetRequestTask extends AsyncTask<HttpRequest,Void,NetErrorStatus> {
 
     }
     /**
-     * Perform a computation on a background thread.
+     * Outcome of a single attempt
+     */
+    private static final class Attempt {
+        final NetErrorStatus status;
+        final int code;
+        final String body;
+        final JsonObject json;
+        final long retryAfter;
+        final long parseTime;
+
+        Attempt(NetErrorStatus status, int code, String body, long retryAfter) {
+            this(status, code, body, null, retryAfter, 0);
+        }
+
+        Attempt(NetErrorStatus status, int code, String body, JsonObject json, long retryAfter, long parseTime) {
+            this.status     = status;
+            this.code       = code;
+            this.body       = body;
+            this.json       = json;
+            this.retryAfter = retryAfter;
+            this.parseTime  = parseTime;
+        }
+    }
+
+    /**
+     * I/O stage, perform one attempt of the request and read the response body, then decide
+     * according to the retry policy of the request whether another attempt is needed
      *
-     * @param params HttpRequest.
-     * @return Status.
+     * @return Delay before the next attempt in milliseconds, -1 when the task is done
      */
-    @Override
-    protected NetErrorStatus doInBackground(HttpRequest... params) {
-        request = params[0];
+    private long readResponse() {
+        attemptTime = 0;
         if(!canGoFurther()) {
             // Cancel
             debug("DoInBackground >> Can go further due to task cancel");
-            NetRequestManager.getInstance().removeFromQueue(netRequest);
-            return NetErrorStatus.CANCELED;
+            NetRequestManager.getInstance().removeFromQueue(entry);
+            status = NetErrorStatus.CANCELED;
+            return -1;
+        }
+        if(isExpired()) {
+            debug("DoInBackground >> Deadline elapsed while queued");
+            status = NetErrorStatus.TIMEOUT;
+            return -1;
+        }
+        long start    = System.nanoTime();
+        int performed = attempts;
+        Attempt attempt = buildAndPerformAttempt();
+        // The streamed json parse is accounted as parse, it is not part of the round trip
+        long elapsed  = System.nanoTime() - start - attempt.parseTime;
+        ioTime       += elapsed;
+        parseTime    += attempt.parseTime;
+        attemptTime   = (attempts > performed) ? elapsed : 0;
+        status       = attempt.status;
+        responseCode = attempt.code;
+        responseText = attempt.body;
+        responseJson = attempt.json;
+        long retryDelay = getRetryDelay(attempt);
+        if(retryDelay < 0) {
+            NetRequestManager.getInstance().getMetrics().recordIo(ioTime);
+            if(parseTime > 0) {
+                NetRequestManager.getInstance().getMetrics().recordParse(parseTime);
+            }
+        }
+        return retryDelay;
+    }
+
+    /**
+     * Tell whether or not the body has to go through the parse stage, json is parsed while
+     * it is read so only xml does
+     * @return True|False
+     */
+    private boolean needsParse() {
+        return status == NetErrorStatus.SUCCESS
+                && netRequest.getRequestDataType().equals(RequestDataType.XML);
+    }
+
+    /**
+     * Build the http request and perform an attempt with it
+     * @return Attempt
+     */
+    private Attempt buildAndPerformAttempt() {
+        HttpRequest built;
+        try {
+            built = NetRequestManager.getInstance().buildRequest(netRequest);
+        } catch (HttpRequest.HttpRequestException e) {
+            error("DoInBackground >> Invalid uri >> " + netRequest.getRequestUri());
+            return new Attempt(NetErrorStatus.INVALID_URI_ERROR, 0, null, -1);
+        }
+        request = built;
+        entry.setRequest(built);
+        if(canceled) {
+            // Cancelled while building, make sure the connection is not left open
+            built.disconnect();
+            return new Attempt(NetErrorStatus.CANCELED, 0, null, -1);
+        }
+        Future<?> watchdog = (deadline == 0) ? null : scheduleWatchdog();
+        try {
+            return performHedgedAttempt(built);
+        } finally {
+            if(watchdog != null) {
+                watchdog.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Disconnect the request once the deadline elapses, read timeouts only bound the wait
+     * between two reads so a slow response could otherwise outlive the deadline. It runs on
+     * the scheduler thread, a full executor would otherwise delay it past the deadline
+     * @return Future to cancel the watchdog
+     */
+    private Future<?> scheduleWatchdog() {
+        return NetRequestManager.getInstance().getDispatcher().runAfter(new Runnable() {
+            @Override
+            public void run() {
+                debug("Watchdog >> Deadline elapsed >> Disconnecting");
+                HttpRequest current = request;
+                if(current != null) {
+                    current.disconnect();
+                }
+                HttpRequest hedge = hedgeRequest;
+                if(hedge != null) {
+                    hedge.disconnect();
+                }
+            }
+        }, getRemainingTime());
+    }
+
+    /**
+     * Get the delay before the next attempt allowed by the retry policy and the deadline, the
+     * status becomes {@link NetErrorStatus#TIMEOUT} when the deadline elapses before it
+     * @param attempt Last attempt
+     * @return Delay in milliseconds, -1 when the request must not be retried
+     */
+    private long getRetryDelay(Attempt attempt) {
+        RetryPolicy retryPolicy = netRequest.getRetryPolicy();
+        if(retryPolicy == null) {
+            retryPolicy = NetRequestManager.getInstance().getRetryPolicy();
+        }
+        if(retryPolicy == null || canceled
+                || !retryPolicy.shouldRetry(netRequest.getMethod(), attempt.status, attempt.code, attempts)) {
+            return -1;
+        }
+        long delay = retryPolicy.getDelay(attempts, attempt.retryAfter);
+        if(delay < 0) {
+            debug("DoInBackground >> Retry-After exceeds the maximum delay >> Not retrying");
+            return -1;
+        }
+        if(delay >= getRemainingTime()) {
+            debug("DoInBackground >> Deadline elapses before next attempt");
+            status = NetErrorStatus.TIMEOUT;
+            return -1;
+        }
+        debug("DoInBackground >> Attempt " + attempts + " failed with " + attempt.status + " >> Retrying in " + delay + "ms");
+        return delay;
+    }
+
+    /**
+     * Perform an attempt, racing it against a duplicate request when hedging applies: if no
+     * response arrived after the hedge delay a second request is started. The hedge wins, and
+     * the primary request is disconnected, only if it gets a decisive response first,
+     * otherwise the outcome of the primary request is kept. A winning primary request
+     * disconnects the hedge
+     * @param primary HttpRequest
+     * @return Attempt of the winner
+     */
+    private Attempt performHedgedAttempt(HttpRequest primary) {
+        attempts++;
+        hedged = false;
+        final NetRequestManager manager = NetRequestManager.getInstance();
+        long delay = getHedgeDelay();
+        if(delay <= 0 || !manager.recordHedgeCandidate()) {
+            return performAttempt(primary);
+        }
+        final AtomicReference<Attempt> winner = new AtomicReference<>();
+        final HttpRequest primaryRequest      = primary;
+        Future<?> hedge = manager.getDispatcher().scheduleHedge(new Runnable() {
+            @Override
+            public void run() {
+                if(winner.get() != null || !canGoFurther() || !manager.tryAcquireHedge()) {
+                    return;
+                }
+                debug("DoInBackground >> No response yet >> Sending hedge request");
+                hedged = true;
+                HttpRequest hedgeRequest;
+                try {
+                    hedgeRequest = manager.buildRequest(netRequest);
+                } catch (Exception e) {
+                    return;
+                }
+                NetRequestTask.this.hedgeRequest = hedgeRequest;
+                if(canceled || winner.get() != null) {
+                    hedgeRequest.disconnect();
+                    return;
+                }
+                Attempt attempt = performAttempt(hedgeRequest);
+                // A failed hedge leaves the primary request running, it may still succeed
+                if(isDecisive(attempt) && winner.compareAndSet(null, attempt)) {
+                    debug("DoInBackground >> Hedge request won");
+                    primaryRequest.disconnect();
+                }
+            }
+        }, delay);
+        Attempt attempt = performAttempt(primary);
+        if(winner.compareAndSet(null, attempt)) {
+            hedge.cancel(false);
+            HttpRequest hedgeRequest = this.hedgeRequest;
+            if(hedgeRequest != null) {
+                hedgeRequest.disconnect();
+            }
+            return attempt;
         }
+        // The hedge won and disconnected the primary request
+        return winner.get();
+    }
+
+    /**
+     * Tell whether or not an attempt settles the request, a success or a client error the
+     * primary request would get as well. Connection errors, timeouts, server errors and
+     * throttling (408, 429) do not
+     * @param attempt Attempt
+     * @return True|False
+     */
+    private static boolean isDecisive(Attempt attempt) {
+        if(attempt.status == NetErrorStatus.SUCCESS) {
+            return true;
+        }
+        return attempt.code >= 400 && attempt.code < 500 && attempt.code != 408 && attempt.code != 429;
+    }
+
+    /**
+     * Get the delay after which a hedge request is sent
+     * @return Delay in milliseconds, 0 when the request must not be hedged
+     */
+    private long getHedgeDelay() {
+        if(!netRequest.isHedgingEnabled() || netRequest.getMethod() != RequestMethod.GET) {
+            return 0;
+        }
+        if(netRequest.getHedgeDelay() > 0) {
+            return netRequest.getHedgeDelay();
+        }
+        return NetRequestManager.getInstance().getDispatcher().getLatencyPercentile(host, 95);
+    }
+
+    /**
+     * Perform a single attempt
+     * @param request HttpRequest
+     * @return Attempt
+     */
+    private Attempt performAttempt(HttpRequest request) {
         try {
             debug("DoInBackground >> Performing request on url");
+            if(deadline != 0) {
+                applyDeadline(request);
+            }
             if(netRequest.getMethod() == RequestMethod.POST){
                 request.send(netRequest.getParameters());
             }
-            responseText = request.body();
+            int code = request.code();
+            if(request.ok() && netRequest.getRequestDataType().equals(RequestDataType.JSON)) {
+                debug("DoInBackground >> Streaming json response >> ResponseStatus >> " + code);
+                long start = System.nanoTime();
+                JsonObject json = readJson(request);
+                long parsed = System.nanoTime() - start;
+                if(json == null) {
+                    return new Attempt(NetErrorStatus.PARSE_ERROR, code, null, null, -1, parsed);
+                }
+                return new Attempt(NetErrorStatus.SUCCESS, code, null, json, -1, parsed);
+            }
+            String body = request.body();
             if(request.ok()) {
                 // Debug
-                debug("DoInBackground >> Response >> " + responseText + " ResponseStatus >> " + request.code());
-                RequestDataType requestDataType = netRequest.getRequestDataType();
-                if (requestDataType.equals(RequestDataType.JSON)) {
-                    responseJson = getAsJson(responseText);
-                    if (responseJson == null) {
-                        status = NetErrorStatus.PARSE_ERROR;
-                    } else {
-                        status = NetErrorStatus.SUCCESS;
-                    }
-                } else if (requestDataType.equals(RequestDataType.XML)) {
-                    responseXML = getAsXML(responseText);
-                    if (responseXML == null) {
-                        status = NetErrorStatus.PARSE_ERROR;
-                    } else {
-                        status = NetErrorStatus.SUCCESS;
-                    }
-                } else {
-                    status = NetErrorStatus.SUCCESS;
-                }
-            } else if(request.code() == 404) {
-                status = NetErrorStatus.NOT_FOUND;
-            } else if(request.code() == 502) {
-                status = NetErrorStatus.BAD_GATEWAY;
+                debug("DoInBackground >> Response >> " + body + " ResponseStatus >> " + code);
+                return new Attempt(NetErrorStatus.SUCCESS, code, body, -1);
+            } else if(code == 404) {
+                return new Attempt(NetErrorStatus.NOT_FOUND, code, body, -1);
+            } else if(code == 502) {
+                return new Attempt(NetErrorStatus.BAD_GATEWAY, code, body, getRetryAfter(request));
             }  else  {
-                status = NetErrorStatus.SERVER_ERROR;
+                return new Attempt(NetErrorStatus.SERVER_ERROR, code, body, getRetryAfter(request));
             }
         } catch (Exception e){
             if (NetRequestManager.getInstance().isDebug()) {
@@ -211,69 +820,209 @@ public class NetRequestTask extends AsyncTask<HttpRequest,Void,NetErrorStatus> {
                 error("DoInBackground >> HttpRequest error");
                 e.printStackTrace();
             }
-            status = NetErrorStatus.REQUEST_ERROR;
+            if(e.getCause() instanceof SocketTimeoutException || isExpired()) {
+                return new Attempt(NetErrorStatus.TIMEOUT, 0, null, -1);
+            }
+            return new Attempt(NetErrorStatus.REQUEST_ERROR, 0, null, -1);
         }
-        return status;
     }
 
-    @Override
-    protected void onPostExecute(NetErrorStatus status) {
-        super.onPostExecute(status);
+    /**
+     * Shorten the connect and read timeouts of a request to the time left before the deadline
+     * @param request HttpRequest
+     */
+    private void applyDeadline(HttpRequest request) {
+        int remaining = (int) Math.max(1, Math.min(Integer.MAX_VALUE, getRemainingTime()));
+        HttpURLConnection connection = request.getConnection();
+        if(connection.getConnectTimeout() == 0 || connection.getConnectTimeout() > remaining) {
+            request.connectTimeout(remaining);
+        }
+        if(connection.getReadTimeout() == 0 || connection.getReadTimeout() > remaining) {
+            request.readTimeout(remaining);
+        }
+    }
+
+    /**
+     * Read the Retry-After header, either a number of seconds or an http date
+     * @param request HttpRequest
+     * @return Delay in milliseconds, -1 if absent or invalid
+     */
+    private long getRetryAfter(HttpRequest request) {
+        try {
+            String value = request.header("Retry-After");
+            if(value == null || value.trim().isEmpty()) {
+                return -1;
+            }
+            try {
+                return Math.max(0, Long.parseLong(value.trim()) * 1000L);
+            } catch (NumberFormatException e) {
+                long date = request.dateHeader("Retry-After");
+                return (date <= 0) ? -1 : Math.max(0, date - System.currentTimeMillis());
+            }
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Get the http status code of the last attempt
+     * @return Code, 0 when no response was received
+     */
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    /**
+     * Get the number of attempts performed
+     * @return Attempts
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * Check if a hedge request has been sent
+     * @return True|False
+     */
+    public boolean isHedged() {
+        return hedged;
+    }
+
+    /**
+     * Parse stage, parse the xml response body
+     */
+    private void parseResponse() {
+        if(!canGoFurther()) {
+            debug("Parse >> Can go further due to task cancel");
+            status = NetErrorStatus.CANCELED;
+            return;
+        }
+        if(isExpired()) {
+            debug("Parse >> Deadline elapsed");
+            status = NetErrorStatus.TIMEOUT;
+            return;
+        }
+        long start = System.nanoTime();
+        responseXML = getAsXML(responseText);
+        if (responseXML == null) {
+            status = NetErrorStatus.PARSE_ERROR;
+        }
+        parseTime = System.nanoTime() - start;
+        NetRequestManager.getInstance().getMetrics().recordParse(parseTime);
+    }
+
+    /**
+     * Deliver the result, runs on the delivery executor of the request that created the task
+     * @param status Status
+     */
+    private void onPostExecute(NetErrorStatus status) {
         debug("OnPostExecute >> Status : "+status);
         this.status = status;
-        if(!canGoFurther()) {
+        List<NetRequest> targets = canGoFurther() ? entry.finish() : null;
+        NetRequestManager manager = NetRequestManager.getInstance();
+        manager.removeFromQueue(entry);
+        for (NetRequest request : entry.getRequests()) {
+            manager.unregister(request, entry);
+        }
+        if(targets == null) {
             // Cancel
             debug("OnPostExecute >> Can go further due to task cancel");
-            NetRequestManager.getInstance().removeFromQueue(netRequest);
+            if(entry.cancel()) {
+                for (NetRequest target : entry.getRequests()) {
+                    target.notifyCancelled();
+                }
+            }
             return;
         }
-        // Get listener
-        OnNetResponse listener          = netRequest.getResponseListener();
-        RequestDataType requestDataType = netRequest.getRequestDataType();
-        Object tag                      = netRequest.getTag();
-        if (status == NetErrorStatus.SUCCESS){
-            if(listener != null) {
-                // Debug
-                debug("OnPostExecute >> Status : Success >> Triggering listener");
-                Object data = null;
-                if(requestDataType.equals(RequestDataType.JSON)) {
-                    data = responseJson;
-                } else if(requestDataType.equals(RequestDataType.XML)){
-                    data = responseXML;
-                }
-                NetResponse netResponse = new NetResponse(responseText,tag, requestDataType,data);
-                listener.onNetResponseCompleted(netResponse);
+        Executor executor = getDeliveryExecutor(netRequest);
+        for (final NetRequest target : targets) {
+            Executor targetExecutor = getDeliveryExecutor(target);
+            if (targetExecutor == executor) {
+                deliverTo(target);
+            } else {
+                // Attached request delivered on another thread
+                targetExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        deliverTo(target);
+                    }
+                });
             }
+        }
+    }
+    /**
+     * Trigger the listener of a request with the result
+     * @param target NetRequest
+     */
+    private void deliverTo(NetRequest target) {
+        if(!canDeliverTo(target)) {
+            target.notifyCancelled();
+            return;
+        }
+        Object tag = target.getTag();
+        if (status == NetErrorStatus.SUCCESS){
+            // Debug
+            debug("OnPostExecute >> Status : Success >> Triggering listener");
+            RequestDataType requestDataType = netRequest.getRequestDataType();
+            target.deliverResponse(new NetResponse(responseText,tag, requestDataType,getData(requestDataType)));
         } else {
-            if(listener != null) {
-                // Debug
-                debug("OnPostExecute >> Status : Error >> Triggering listener");
-                listener.onNetResponseError(new NetError(status,tag));
-            }
+            // Debug
+            debug("OnPostExecute >> Status : Error >> Triggering listener");
+            target.deliverError(new NetError(status,tag,responseCode));
         }
-        NetRequestManager.getInstance().removeFromQueue(netRequest);
+    }
+    /**
+     * Get the executor triggering the listener of a request
+     * @param target NetRequest
+     * @return Executor of the request, the one of the manager if none
+     */
+    private static Executor getDeliveryExecutor(NetRequest target) {
+        Executor executor = target.getDeliveryExecutor();
+        return (executor != null) ? executor : NetRequestManager.getInstance().getDeliveryExecutor();
+    }
+    /**
+     * Get parsed data according to the data type
+     * @param requestDataType RequestDataType
+     * @return Parsed data, null for text
+     */
+    private Object getData(RequestDataType requestDataType) {
+        if(requestDataType.equals(RequestDataType.JSON)) {
+            return responseJson;
+        } else if(requestDataType.equals(RequestDataType.XML)){
+            return responseXML;
+        }
+        return null;
     }
     /**
      * Tell whether or not we should continue performing this request
      * @return True|False
      */
     private boolean canGoFurther(){
-        boolean go = true;
-        if(canceled) {
+        if(canceled || Thread.currentThread().isInterrupted()
+                || entry.getState() == NetRequestEntry.State.CANCELED) {
             return false;
         }
-        Context context = netRequest.getContext();
-        if(isCancelled()) {
-            go = false;
-        } else {
-            if(netRequest.isCancelOnContextDie()) {
-                if (context == null) {
-                    go = false;
-                } else {
-                    if (context instanceof AppCompatActivity) {
-                        AppCompatActivity activity = ((AppCompatActivity) context);
-                        go = !activity.isFinishing();
-                    }
+        for (NetRequest target : entry.getRequests()) {
+            if(canDeliverTo(target)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    /**
+     * Tell whether or not the result should still be delivered to a given request
+     * @param target NetRequest
+     * @return True|False
+     */
+    private boolean canDeliverTo(NetRequest target){
+        boolean go = true;
+        Context context = target.getContext();
+        if(target.isCancelOnContextDie()) {
+            if (context == null) {
+                go = false;
+            } else {
+                if (context instanceof Activity) {
+                    go = !((Activity) context).isFinishing();
                 }
             }
         }
@@ -16,7 +16,7 @@ import org.w3c.dom.Document;
 @SuppressWarnings("all")
 public class NetResponse {
     /**
-     * ResponseText
+     * ResponseText, null for json responses parsed from the connection
      */
     private final String responseText;
     /**
@@ -46,6 +46,7 @@ public class NetResponse {
      */
     public NetResponse(String body, Object tag, RequestDataType requestDataType, Object data){
         this.responseText = body;
+        this.tag = tag;
         this.requestDataType = requestDataType;
         if(requestDataType.equals(RequestDataType.JSON)){
             responseJson = (JsonObject)data;
@@ -53,8 +54,16 @@ public class NetResponse {
             responseXML = (Document)data;
         }
     }
+    /**
+     * Get the response text, json responses are not kept as text and are serialized again
+     * from the parsed tree on each call
+     * @return Response text
+     */
     @Override
     public String toString() {
+        if(responseText == null && responseJson != null) {
+            return responseJson.toString();
+        }
         return responseText;
     }
     /**
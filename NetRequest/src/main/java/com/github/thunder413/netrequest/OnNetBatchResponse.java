@@ -0,0 +1,31 @@
+package com.github.thunder413.netrequest;
+
+import java.util.List;
+
+/**
+ * OnNetBatchResponse
+ * <p>An interface build to handle NetRequestBatch events, all callbacks are triggered
+ * on the main thread</p>
+ * @version 1.4
+ * @author Thunder413
+ */
+public interface OnNetBatchResponse {
+    /**
+     * Fires as soon as one request of the batch has been completed
+     * @param request NetRequest
+     * @param response NetResponse
+     */
+    void onNetRequestCompleted(NetRequest request, NetResponse response);
+    /**
+     * Fires as soon as one request of the batch has failed
+     * @param request NetRequest
+     * @param error NetError
+     */
+    void onNetRequestError(NetRequest request, NetError error);
+    /**
+     * Fires once every request of the batch is done or the batch deadline elapsed
+     * @param results One result per request, in the order they were added
+     *      @see NetBatchResult
+     */
+    void onNetBatchCompleted(List<NetBatchResult> results);
+}
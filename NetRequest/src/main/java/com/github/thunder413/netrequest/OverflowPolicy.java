@@ -0,0 +1,30 @@
+package com.github.thunder413.netrequest;
+
+/**
+ * OverflowPolicy
+ *
+ * <p>What the dispatcher does with a new request when its ready queue reached the maximum
+ * depth</p>
+ *
+ * @author Thunder413
+ * @version 1.4
+ * @see NetRequestManager#setMaxQueueDepth(int)
+ */
+@SuppressWarnings("WeakerAccess")
+public enum OverflowPolicy {
+    /**
+     * Fail the new request with {@link NetErrorStatus#QUEUE_FULL}
+     */
+    REJECT_NEWEST,
+    /**
+     * Fail the oldest queued request of the lowest priority with {@link NetErrorStatus#QUEUE_FULL}
+     * to make room, the new request is rejected if every queued request has a higher priority
+     */
+    DROP_OLDEST_LOW_PRIORITY,
+    /**
+     * Block the calling thread until there is room, requests loaded from the main thread are
+     * rejected instead since it must never block. Synchronous {@link NetRequest#execute()}
+     * calls also wait for room before being performed
+     */
+    BLOCK
+}
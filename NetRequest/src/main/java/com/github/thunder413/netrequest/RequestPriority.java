@@ -0,0 +1,28 @@
+package com.github.thunder413.netrequest;
+
+/**
+ * RequestPriority
+ *
+ * <p>Order in which queued requests are started by the dispatcher. Waiting requests age,
+ * so a low priority request is eventually started even under a constant flow of higher
+ * priority ones
+ * </p>
+ *
+ * @author thunder413
+ * @version 1.4
+ */
+@SuppressWarnings("WeakerAccess")
+public enum RequestPriority {
+    /**
+     * Request the user is waiting on
+     */
+    IMMEDIATE,
+    /**
+     * Default priority
+     */
+    NORMAL,
+    /**
+     * Speculative work such as thumbnails prefetch
+     */
+    PREFETCH
+}
@@ -0,0 +1,189 @@
+package com.github.thunder413.netrequest;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * RetryPolicy
+ * <p>Describes how failed requests are attempted again. Retries are performed by the same
+ * task, which releases its dispatcher slot during the backoff and goes through the ready
+ * queue again once it elapses. The delay is drawn with full jitter between 0 and
+ * {@code min(maxDelay, baseDelay * 2^attempt)} so that clients failing together do not retry
+ * together. A Retry-After header sent by the server takes precedence over the computed delay,
+ * the request is not retried when it asks to wait longer than the maximum delay.
+ * </p>
+ * <p>Only idempotent methods (GET, PUT, DELETE) are retried unless POST retries are enabled
+ * with {@link #setRetryPost(boolean)}. Client errors (4xx other than 429) are never retried.
+ * </p>
+ * @author Thunder413
+ * @version 1.4
+ */
+@SuppressWarnings("WeakerAccess")
+public class RetryPolicy {
+    /**
+     * Default number of attempts, including the first one
+     */
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    /**
+     * Default base delay in milliseconds
+     */
+    public static final long DEFAULT_BASE_DELAY = 500;
+    /**
+     * Default maximum delay in milliseconds
+     */
+    public static final long DEFAULT_MAX_DELAY = 30000;
+    /**
+     * Random source for the jitter
+     */
+    private static final Random RANDOM = new Random();
+    /**
+     * Number of attempts, including the first one
+     */
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    /**
+     * Base delay in milliseconds
+     */
+    private long baseDelay = DEFAULT_BASE_DELAY;
+    /**
+     * Maximum delay in milliseconds
+     */
+    private long maxDelay = DEFAULT_MAX_DELAY;
+    /**
+     * Statuses worth retrying
+     */
+    private Set<NetErrorStatus> retryableStatuses = EnumSet.of(
+            NetErrorStatus.REQUEST_ERROR, NetErrorStatus.BAD_GATEWAY, NetErrorStatus.SERVER_ERROR,
+            NetErrorStatus.TIMEOUT);
+    /**
+     * Whether or not POST requests are retried
+     */
+    private boolean retryPost;
+
+    /**
+     * Set the number of attempts, including the first one
+     * @param maxAttempts Attempts, at least 1
+     */
+    public RetryPolicy setMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts < 1: " + maxAttempts);
+        }
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    /**
+     * Get the number of attempts, including the first one
+     * @return Attempts
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Set the base delay, doubled on each attempt
+     * @param millis Delay in milliseconds
+     */
+    public RetryPolicy setBaseDelay(long millis) {
+        this.baseDelay = millis;
+        return this;
+    }
+
+    /**
+     * Get the base delay
+     * @return Delay in milliseconds
+     */
+    public long getBaseDelay() {
+        return baseDelay;
+    }
+
+    /**
+     * Set the maximum delay between two attempts, a request whose Retry-After exceeds it is
+     * not retried
+     * @param millis Delay in milliseconds
+     */
+    public RetryPolicy setMaxDelay(long millis) {
+        this.maxDelay = millis;
+        return this;
+    }
+
+    /**
+     * Get the maximum delay between two attempts
+     * @return Delay in milliseconds
+     */
+    public long getMaxDelay() {
+        return maxDelay;
+    }
+
+    /**
+     * Set the statuses worth retrying
+     * @param statuses Statuses
+     */
+    public RetryPolicy setRetryableStatuses(Set<NetErrorStatus> statuses) {
+        this.retryableStatuses = statuses.isEmpty()
+                ? EnumSet.noneOf(NetErrorStatus.class) : EnumSet.copyOf(statuses);
+        return this;
+    }
+
+    /**
+     * Get the statuses worth retrying
+     * @return Unmodifiable set
+     */
+    public Set<NetErrorStatus> getRetryableStatuses() {
+        return Collections.unmodifiableSet(retryableStatuses);
+    }
+
+    /**
+     * Enable / Disable retries of POST requests, which are not idempotent
+     * @param retryPost State
+     */
+    public RetryPolicy setRetryPost(boolean retryPost) {
+        this.retryPost = retryPost;
+        return this;
+    }
+
+    /**
+     * Tell whether or not POST requests are retried
+     * @return State
+     */
+    public boolean isRetryPost() {
+        return retryPost;
+    }
+
+    /**
+     * Tell whether or not a failed attempt should be retried
+     * @param method Request method
+     * @param status Attempt status
+     * @param code Http status code, 0 when no response was received
+     * @param attempt Number of attempts already performed
+     * @return True to retry
+     */
+    public boolean shouldRetry(RequestMethod method, NetErrorStatus status, int code, int attempt) {
+        if (attempt >= maxAttempts || !retryableStatuses.contains(status)) {
+            return false;
+        }
+        if (method == RequestMethod.POST && !retryPost) {
+            return false;
+        }
+        return code < 400 || code >= 500 || code == 429;
+    }
+
+    /**
+     * Delay before the next attempt
+     * @param attempt Number of attempts already performed
+     * @param retryAfter Delay requested by the server in milliseconds, negative if none
+     * @return Delay in milliseconds, -1 when the server asks to wait longer than the maximum
+     * delay, retrying earlier would only be refused again
+     */
+    public long getDelay(int attempt, long retryAfter) {
+        if (retryAfter >= 0) {
+            return (retryAfter <= maxDelay) ? retryAfter : -1;
+        }
+        long ceiling = baseDelay << Math.min(attempt, 30);
+        if (ceiling <= 0 || ceiling > maxDelay) {
+            ceiling = maxDelay;
+        }
+        return (long) (RANDOM.nextDouble() * ceiling);
+    }
+}
@@ -0,0 +1,123 @@
+package com.github.thunder413.netrequest;
+
+import org.junit.Test;
+
+import static com.github.thunder413.netrequest.NetCircuitBreaker.CALL;
+import static com.github.thunder413.netrequest.NetCircuitBreaker.REFUSED;
+import static org.junit.Assert.*;
+
+/**
+ * NetCircuitBreaker unit tests
+ */
+public class NetCircuitBreakerTest {
+
+    private static NetCircuitBreaker newBreaker(long openDuration) {
+        return new NetCircuitBreaker(new CircuitBreakerPolicy()
+                .setWindowSize(4)
+                .setMinimumCalls(4)
+                .setFailureRateThreshold(0.5f)
+                .setOpenDuration(openDuration)
+                .setHalfOpenProbes(2));
+    }
+
+    /**
+     * Open a breaker with a zero open duration, the next acquire makes it half open
+     */
+    private static void open(NetCircuitBreaker breaker) {
+        for (int i = 0; i < 4; i++) {
+            breaker.onResult(CALL, true);
+        }
+    }
+
+    @Test
+    public void breaker_opensOnceFailureRateReached() {
+        NetCircuitBreaker breaker = newBreaker(60000);
+        assertEquals(CALL, breaker.tryAcquire());
+        breaker.onResult(CALL, true);
+        breaker.onResult(CALL, true);
+        breaker.onResult(CALL, false);
+        assertEquals(NetCircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.onResult(CALL, false);
+        assertEquals(NetCircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.isCallPermitted());
+        assertEquals(REFUSED, breaker.tryAcquire());
+    }
+
+    @Test
+    public void isCallPermitted_doesNotTakeProbes() {
+        NetCircuitBreaker breaker = newBreaker(0);
+        open(breaker);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(breaker.isCallPermitted());
+        }
+        assertTrue(breaker.tryAcquire() > CALL);
+        assertEquals(NetCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquire() > CALL);
+        assertFalse(breaker.isCallPermitted());
+        assertEquals(REFUSED, breaker.tryAcquire());
+    }
+
+    @Test
+    public void halfOpen_closesWhenProbesSucceed_andReopensOnFailure() {
+        NetCircuitBreaker breaker = newBreaker(0);
+        open(breaker);
+        long first = breaker.tryAcquire();
+        long second = breaker.tryAcquire();
+        breaker.onResult(first, false);
+        breaker.onResult(second, false);
+        assertEquals(NetCircuitBreaker.State.CLOSED, breaker.getState());
+
+        open(breaker);
+        long probe = breaker.tryAcquire();
+        breaker.onResult(probe, true);
+        assertEquals(NetCircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void halfOpen_ignoresOutcomesOfRequestsWithoutProbe() {
+        NetCircuitBreaker breaker = newBreaker(0);
+        long call = breaker.tryAcquire();
+        open(breaker);
+        long probe = breaker.tryAcquire();
+        // Started while closed, neither its success nor its failure is a probe outcome
+        breaker.onResult(call, false);
+        breaker.onResult(call, false);
+        assertEquals(NetCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.onResult(call, true);
+        assertEquals(NetCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        // Probe of an earlier half open period
+        breaker.onResult(probe, true);
+        assertEquals(NetCircuitBreaker.State.OPEN, breaker.getState());
+        long next = breaker.tryAcquire();
+        breaker.onResult(probe, true);
+        assertEquals(NetCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.onResult(next, false);
+        breaker.onResult(breaker.tryAcquire(), false);
+        assertEquals(NetCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void onIgnored_releasesProbeOfItsOwnerOnly() {
+        NetCircuitBreaker breaker = newBreaker(0);
+        long call = breaker.tryAcquire();
+        open(breaker);
+        long probe = breaker.tryAcquire();
+        assertTrue(breaker.tryAcquire() > CALL);
+        assertFalse(breaker.isCallPermitted());
+        breaker.onIgnored(call);
+        assertFalse(breaker.isCallPermitted());
+        breaker.onIgnored(probe);
+        assertTrue(breaker.isCallPermitted());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsMinimumCallsAboveWindowSize() {
+        new NetCircuitBreaker(new CircuitBreakerPolicy().setWindowSize(5).setMinimumCalls(6));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void dispatcher_rejectsMinimumCallsAboveWindowSize() {
+        new NetRequestDispatcher().setCircuitBreakerPolicy(
+                new CircuitBreakerPolicy().setWindowSize(5).setMinimumCalls(6));
+    }
+}
@@ -0,0 +1,52 @@
+package com.github.thunder413.netrequest;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * NetConcurrencyLimit unit tests
+ */
+public class NetConcurrencyLimitTest {
+    private static final long RTT = 50000000L;
+
+    @Test
+    public void limit_growsWhileRoundTripStaysLow() {
+        NetConcurrencyLimit limit = new NetConcurrencyLimit(4, 1, 64);
+        for (int i = 0; i < 100; i++) {
+            limit.onSample(RTT, limit.getLimit(), false);
+        }
+        assertTrue(limit.getLimit() > 4);
+        assertEquals(50, limit.getMinRtt());
+    }
+
+    @Test
+    public void limit_shrinksOnOverloadAndInflatedRoundTrip() {
+        NetConcurrencyLimit limit = new NetConcurrencyLimit(20, 1, 64);
+        limit.onSample(RTT, 20, false);
+        limit.onSample(RTT * 3, 20, false);
+        assertEquals(18, limit.getLimit());
+        // The round trip of an overload sample is ignored
+        limit.onSample(1, 20, true);
+        assertEquals(16, limit.getLimit());
+        assertEquals(50, limit.getMinRtt());
+    }
+
+    @Test
+    public void limit_staysWithinBounds() {
+        NetConcurrencyLimit limit = new NetConcurrencyLimit(2, 2, 3);
+        for (int i = 0; i < 50; i++) {
+            limit.onSample(RTT, 0, true);
+        }
+        assertEquals(2, limit.getLimit());
+        for (int i = 0; i < 50; i++) {
+            limit.onSample(RTT, limit.getLimit(), false);
+        }
+        assertEquals(3, limit.getLimit());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsInvalidBounds() {
+        new NetConcurrencyLimit(1, 4, 2);
+    }
+}
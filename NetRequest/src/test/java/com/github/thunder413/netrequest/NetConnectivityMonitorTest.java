@@ -0,0 +1,141 @@
+package com.github.thunder413.netrequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Connectivity monitor unit tests, state changes and the offline short-circuit of requests
+ */
+public class NetConnectivityMonitorTest {
+    private ManualConnectivityMonitor monitor;
+
+    /**
+     * Listener recording the states it is notified of
+     */
+    private static final class RecordingListener implements NetConnectivityMonitor.Listener {
+        final List<Boolean> states = new ArrayList<>();
+
+        @Override
+        public void onConnectivityChanged(boolean connected) {
+            states.add(connected);
+        }
+    }
+
+    /**
+     * Response listener recording the errors it is notified of
+     */
+    private static final class RecordingResponse implements OnNetResponse {
+        final List<NetErrorStatus> errors = new ArrayList<>();
+        int responses;
+
+        @Override
+        public void onNetResponseCompleted(NetResponse response) {
+            responses++;
+        }
+
+        @Override
+        public void onNetResponseError(NetError error) {
+            errors.add(error.getStatus());
+        }
+    }
+
+    @Before
+    public void setUp() {
+        monitor = new ManualConnectivityMonitor(false);
+        NetRequestManager.getInstance().setConnectivityMonitor(monitor);
+    }
+
+    @After
+    public void tearDown() {
+        NetRequestManager.getInstance().setConnectivityMonitor(null);
+    }
+
+    @Test
+    public void setConnected_notifiesListenersOnChangeOnly() {
+        RecordingListener listener = new RecordingListener();
+        monitor.addListener(listener);
+        monitor.setConnected(false);
+        assertTrue(listener.states.isEmpty());
+        monitor.setConnected(true);
+        assertTrue(monitor.isConnected());
+        monitor.setConnected(true);
+        monitor.setConnected(false);
+        assertFalse(monitor.isConnected());
+        assertEquals(2, listener.states.size());
+        assertEquals(Boolean.TRUE, listener.states.get(0));
+        assertEquals(Boolean.FALSE, listener.states.get(1));
+
+        monitor.removeListener(listener);
+        monitor.setConnected(true);
+        assertEquals(2, listener.states.size());
+    }
+
+    @Test
+    public void manager_usesMonitorSet() {
+        assertSame(monitor, NetRequestManager.getInstance().getConnectivityMonitor(null));
+    }
+
+    @Test
+    public void load_whileOffline_deliversConnectionErrorWithoutQueueing() {
+        NetRequest request = NetRequestEntryTest.newRequest();
+        RecordingResponse response = new RecordingResponse();
+        request.setOnResponseListener(response);
+        request.load("https://example.com/offline");
+        assertEquals(1, response.errors.size());
+        assertEquals(NetErrorStatus.CONNECTION_ERROR, response.errors.get(0));
+        assertEquals(0, response.responses);
+        assertFalse(NetRequestManager.getInstance().isQueued(request));
+    }
+
+    @Test
+    public void loadAsync_whileOffline_failsFuture() {
+        NetRequest request = NetRequestEntryTest.newRequest();
+        request.setRequestUri("https://example.com/offline");
+        final List<NetErrorStatus> errors = new ArrayList<>();
+        NetFuture<NetResponse> future = request.loadAsync();
+        future.addCallback(new NetFuture.Callback<NetResponse>() {
+            @Override
+            public void onSuccess(NetResponse value) {
+                fail("Offline request succeeded");
+            }
+
+            @Override
+            public void onFailure(NetError error) {
+                errors.add(error.getStatus());
+            }
+        });
+        assertTrue(future.isDone());
+        assertEquals(1, errors.size());
+        assertEquals(NetErrorStatus.CONNECTION_ERROR, errors.get(0));
+    }
+
+    @Test
+    public void execute_whileOffline_throwsConnectionError() {
+        NetRequest request = NetRequestEntryTest.newRequest();
+        try {
+            request.execute("https://example.com/offline");
+            fail("Offline request executed");
+        } catch (NetRequestException e) {
+            assertEquals(NetErrorStatus.CONNECTION_ERROR, e.getStatus());
+        }
+    }
+
+    @Test
+    public void stateChange_isSeenByNextRequest() {
+        monitor.setConnected(true);
+        assertTrue(NetRequestManager.getInstance().getConnectivityMonitor(null).isConnected());
+        monitor.setConnected(false);
+        RecordingResponse response = new RecordingResponse();
+        NetRequest request = NetRequestEntryTest.newRequest();
+        request.setOnResponseListener(response);
+        request.load("https://example.com/flaky");
+        assertEquals(1, response.errors.size());
+        assertEquals(NetErrorStatus.CONNECTION_ERROR, response.errors.get(0));
+    }
+}
@@ -0,0 +1,32 @@
+package com.github.thunder413.netrequest;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * NetDelivery unit tests
+ */
+public class NetDeliveryTest {
+
+    @Test
+    public void mainThreadExecutors_areShared() {
+        assertSame(NetDelivery.mainThread(), NetDelivery.mainThread());
+        assertSame(NetDelivery.coalescingMainThread(), NetDelivery.coalescingMainThread());
+        assertNotSame(NetDelivery.mainThread(), NetDelivery.coalescingMainThread());
+    }
+
+    @Test
+    public void direct_runsOnCallingThread() {
+        final AtomicBoolean ran = new AtomicBoolean();
+        NetDelivery.direct().execute(new Runnable() {
+            @Override
+            public void run() {
+                ran.set(true);
+            }
+        });
+        assertTrue(ran.get());
+    }
+}
@@ -0,0 +1,101 @@
+package com.github.thunder413.netrequest;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * NetFuture unit tests
+ */
+public class NetFutureTest {
+
+    /**
+     * Callback counting its notifications
+     */
+    private static final class CountingCallback implements NetFuture.Callback<String> {
+        final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public void onSuccess(String value) {
+            calls.incrementAndGet();
+        }
+
+        @Override
+        public void onFailure(NetError error) {
+            calls.incrementAndGet();
+        }
+    }
+
+    @Test
+    public void callback_addedAfterCompletion_isTriggered() {
+        NetFuture<String> future = new NetFuture<>();
+        assertTrue(future.complete("done"));
+        assertFalse(future.fail(new NetError(NetErrorStatus.ERROR, null)));
+        CountingCallback callback = new CountingCallback();
+        future.addCallback(callback);
+        assertEquals(1, callback.calls.get());
+    }
+
+    @Test
+    public void callback_racingCompletion_isTriggeredOnce() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            for (int round = 0; round < 500; round++) {
+                final NetFuture<String> future = new NetFuture<>();
+                final CountDownLatch start = new CountDownLatch(1);
+                List<CountingCallback> callbacks = new ArrayList<>();
+                List<Future<?>> adds = new ArrayList<>();
+                for (int i = 0; i < 3; i++) {
+                    final CountingCallback callback = new CountingCallback();
+                    callbacks.add(callback);
+                    adds.add(pool.submit(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                start.await();
+                            } catch (InterruptedException e) {
+                                return;
+                            }
+                            future.addCallback(callback);
+                        }
+                    }));
+                }
+                start.countDown();
+                future.complete("done");
+                for (Future<?> add : adds) {
+                    add.get(5, TimeUnit.SECONDS);
+                }
+                for (CountingCallback callback : callbacks) {
+                    assertEquals(1, callback.calls.get());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void allOf_completesInOrder_andFailsOnFirstError() throws Exception {
+        NetFuture<String> first = new NetFuture<>();
+        NetFuture<String> second = new NetFuture<>();
+        NetFuture<List<String>> all = NetFuture.allOf(first, second);
+        second.complete("b");
+        assertFalse(all.isDone());
+        first.complete("a");
+        assertEquals("[a, b]", all.get(1, TimeUnit.SECONDS).toString());
+
+        NetFuture<String> failing = new NetFuture<>();
+        NetFuture<List<String>> failed = NetFuture.allOf(failing, new NetFuture<String>());
+        failing.fail(new NetError(NetErrorStatus.NOT_FOUND, null));
+        assertTrue(failed.isDone());
+    }
+}
@@ -0,0 +1,94 @@
+package com.github.thunder413.netrequest;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Json response parse benchmark on a 10 MB body read from an in memory stream standing for the
+ * connection: the former path buffered the whole body as a String then parsed it, responses
+ * are now parsed from the stream by a JsonReader.
+ * <p>
+ * Run it on the unit test classpath with <code>org.openjdk.jmh.Main NetJsonParseBenchmark -prof gc</code>,
+ * gc.alloc.rate.norm gives the bytes allocated per response
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx512m"})
+@State(Scope.Benchmark)
+public class NetJsonParseBenchmark {
+    private static final int BODY_SIZE = 10 * 1024 * 1024;
+
+    private byte[] body;
+
+    @Setup
+    public void setup() throws IOException {
+        StringBuilder json = new StringBuilder(BODY_SIZE + 256).append("{\"items\":[");
+        for (int i = 0; json.length() < BODY_SIZE; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":").append(i)
+                    .append(",\"name\":\"Article n\\u00b0").append(i).append(" café\"")
+                    .append(",\"price\":").append(i % 1000).append('.').append(i % 100)
+                    .append(",\"available\":").append(i % 3 != 0)
+                    .append(",\"tags\":[\"new\",\"sale\",\"featured\"]}");
+        }
+        json.append("],\"count\":0}");
+        body = json.toString().getBytes("UTF-8");
+    }
+
+    /**
+     * Connection stream stand-in
+     */
+    private InputStream stream() {
+        return new ByteArrayInputStream(body);
+    }
+
+    @Benchmark
+    public JsonObject bodyString() throws IOException {
+        // HttpRequest.body(): buffered copy to a byte array then decoding
+        InputStream input = new BufferedInputStream(stream(), 8192);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+        }
+        String content = output.toString("UTF-8");
+        return new JsonParser().parse(content).getAsJsonObject();
+    }
+
+    @Benchmark
+    public JsonObject streamed() throws IOException {
+        // HttpRequest.reader() then NetRequestTask.readJson()
+        JsonReader reader = new JsonReader(new InputStreamReader(stream(), "UTF-8"));
+        try {
+            return new JsonParser().parse(reader).getAsJsonObject();
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.github.thunder413.netrequest;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * NetOfflineQueue unit tests
+ */
+public class NetOfflineQueueTest {
+
+    private static boolean isDefinitive(NetErrorStatus status, int code) {
+        return NetOfflineQueue.isDefinitive(new NetError(status, null, code));
+    }
+
+    @Test
+    public void transientFailures_areKeptForNextReplay() {
+        assertFalse(isDefinitive(NetErrorStatus.CONNECTION_ERROR, 0));
+        assertFalse(isDefinitive(NetErrorStatus.TIMEOUT, 0));
+        assertFalse(isDefinitive(NetErrorStatus.CIRCUIT_OPEN, 0));
+        assertFalse(isDefinitive(NetErrorStatus.QUEUE_FULL, 0));
+        assertFalse(isDefinitive(NetErrorStatus.BAD_GATEWAY, 502));
+    }
+
+    @Test
+    public void serverOverload_isKeptForNextReplay() {
+        assertFalse(isDefinitive(NetErrorStatus.SERVER_ERROR, 500));
+        assertFalse(isDefinitive(NetErrorStatus.SERVER_ERROR, 503));
+        assertFalse(isDefinitive(NetErrorStatus.SERVER_ERROR, 429));
+    }
+
+    @Test
+    public void clientErrors_andSuccess_areDefinitive() {
+        assertTrue(isDefinitive(NetErrorStatus.SERVER_ERROR, 400));
+        assertTrue(isDefinitive(NetErrorStatus.SERVER_ERROR, 403));
+        assertTrue(isDefinitive(NetErrorStatus.NOT_FOUND, 404));
+        assertTrue(isDefinitive(NetErrorStatus.PARSE_ERROR, 200));
+    }
+}
@@ -0,0 +1,97 @@
+package com.github.thunder413.netrequest;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * NetRateLimiter unit tests, the GCRA bucket
+ */
+public class NetRateLimiterTest {
+    private static final long SECOND = 1000000000L;
+
+    @Test
+    public void bucket_startsFullThenWaitsOneInterval() {
+        NetRateLimiter limiter = new NetRateLimiter(1, 3);
+        assertEquals(0, limiter.tryAcquire());
+        assertEquals(0, limiter.tryAcquire());
+        assertEquals(0, limiter.tryAcquire());
+        long wait = limiter.tryAcquire();
+        assertTrue(wait > SECOND / 2 && wait <= SECOND);
+        // A refused call does not take a token
+        assertTrue(limiter.tryAcquire() > 0);
+    }
+
+    @Test
+    public void bucket_refillsAtRate() throws Exception {
+        NetRateLimiter limiter = new NetRateLimiter(50, 1);
+        assertEquals(0, limiter.tryAcquire());
+        long wait = limiter.tryAcquire();
+        assertTrue(wait > 0 && wait <= SECOND / 50);
+        Thread.sleep(TimeUnit.NANOSECONDS.toMillis(wait) + 5);
+        assertEquals(0, limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire() > 0);
+    }
+
+    @Test
+    public void idleBucket_doesNotExceedBurst() throws Exception {
+        NetRateLimiter limiter = new NetRateLimiter(100, 2);
+        Thread.sleep(100);
+        assertEquals(0, limiter.tryAcquire());
+        assertEquals(0, limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire() > 0);
+    }
+
+    @Test
+    public void concurrentAcquires_takeBurstTokensExactly() throws Exception {
+        final int threads = 8;
+        final NetRateLimiter limiter = new NetRateLimiter(0.001, 50);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < threads; t++) {
+                futures.add(pool.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        start.await();
+                        int acquired = 0;
+                        for (int i = 0; i < 100; i++) {
+                            if (limiter.tryAcquire() == 0) {
+                                acquired++;
+                            }
+                        }
+                        return acquired;
+                    }
+                }));
+            }
+            start.countDown();
+            int acquired = 0;
+            for (Future<Integer> future : futures) {
+                acquired += future.get(60, TimeUnit.SECONDS);
+            }
+            assertEquals(50, acquired);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsZeroRate() {
+        new NetRateLimiter(0, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsEmptyBucket() {
+        new NetRateLimiter(1, 0);
+    }
+}
@@ -0,0 +1,155 @@
+package com.github.thunder413.netrequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * NetRequestBatch unit tests, queued requests are held by a {@link PendingExecutor} and
+ * complete when the test cancels them
+ */
+public class NetRequestBatchTest {
+    private final List<NetRequest> requests = new ArrayList<>();
+    private final RecordingListener listener = new RecordingListener();
+
+    /**
+     * Batch listener recording what it is notified of
+     */
+    private static final class RecordingListener implements OnNetBatchResponse {
+        final List<NetRequest> errors = new ArrayList<>();
+        List<NetBatchResult> results;
+        int completions;
+
+        @Override
+        public void onNetRequestCompleted(NetRequest request, NetResponse response) {}
+
+        @Override
+        public void onNetRequestError(NetRequest request, NetError error) {
+            errors.add(request);
+        }
+
+        @Override
+        public void onNetBatchCompleted(List<NetBatchResult> results) {
+            this.results = results;
+            completions++;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        NetRequestManager.getInstance()
+                .setConnectivityMonitor(new ManualConnectivityMonitor(true))
+                .setExecutorService(new PendingExecutor());
+    }
+
+    @After
+    public void tearDown() {
+        for (NetRequest request : requests) {
+            request.cancel();
+        }
+        NetRequestManager.getInstance()
+                .setConnectivityMonitor(null)
+                .setExecutorService(null);
+    }
+
+    private NetRequestBatch newBatch(int size) {
+        NetRequestBatch batch = new NetRequestBatch().setOnBatchResponseListener(listener);
+        for (int i = 0; i < size; i++) {
+            NetRequest request = NetRequestEntryTest.newRequest();
+            request.setRequestUri("https://batch.example.com/item/" + i);
+            requests.add(request);
+            batch.add(request);
+        }
+        return batch;
+    }
+
+    private int queuedCount() {
+        int count = 0;
+        for (NetRequest request : requests) {
+            if (NetRequestManager.getInstance().isQueued(request)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void start_keepsAtMostMaxConcurrencyInFlight() {
+        NetRequestBatch batch = newBatch(5).setMaxConcurrency(2);
+        batch.start();
+        assertEquals(2, queuedCount());
+        assertTrue(NetRequestManager.getInstance().isQueued(requests.get(1)));
+        assertFalse(NetRequestManager.getInstance().isQueued(requests.get(2)));
+
+        // Each outcome starts the next request
+        requests.get(0).cancel();
+        assertEquals(2, queuedCount());
+        assertTrue(NetRequestManager.getInstance().isQueued(requests.get(2)));
+        assertEquals(1, listener.errors.size());
+        assertFalse(batch.isFinished());
+
+        for (int i = 1; i < 5; i++) {
+            requests.get(i).cancel();
+            assertTrue(queuedCount() <= 2);
+        }
+        assertTrue(batch.isFinished());
+        assertEquals(1, listener.completions);
+        assertEquals(5, listener.results.size());
+    }
+
+    @Test
+    public void deadline_cancelsRemainingRequestsAsTimeouts() {
+        NetRequestBatch batch = newBatch(4).setMaxConcurrency(2).setDeadline(1000);
+        batch.start();
+        requests.get(0).cancel();
+        batch.onDeadline();
+
+        assertTrue(batch.isFinished());
+        assertEquals(0, queuedCount());
+        assertEquals(1, listener.completions);
+        List<NetBatchResult> results = listener.results;
+        assertEquals(NetErrorStatus.CANCELED, results.get(0).getStatus());
+        for (int i = 1; i < 4; i++) {
+            assertSame(requests.get(i), results.get(i).getRequest());
+            assertEquals(NetErrorStatus.TIMEOUT, results.get(i).getStatus());
+        }
+        // Never started
+        assertEquals(0, results.get(3).getDuration());
+        // Outcomes after the deadline are ignored
+        batch.onDeadline();
+        assertEquals(1, listener.completions);
+    }
+
+    @Test
+    public void cancel_completesBatchOnce() {
+        NetRequestBatch batch = newBatch(3).setMaxConcurrency(1);
+        batch.start();
+        batch.cancel();
+        batch.cancel();
+        assertTrue(batch.isFinished());
+        assertEquals(1, listener.completions);
+        assertEquals(0, queuedCount());
+        for (NetBatchResult result : listener.results) {
+            assertEquals(NetErrorStatus.CANCELED, result.getStatus());
+        }
+    }
+
+    @Test
+    public void emptyBatch_completesRightAway() {
+        new NetRequestBatch().setOnBatchResponseListener(listener).start();
+        assertEquals(1, listener.completions);
+        assertTrue(listener.results.isEmpty());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void add_afterStart_throws() {
+        NetRequestBatch batch = newBatch(1);
+        batch.start();
+        batch.add(NetRequestEntryTest.newRequest());
+    }
+}
@@ -0,0 +1,93 @@
+package com.github.thunder413.netrequest;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * NetRequestCanonicalizer unit tests
+ */
+public class NetRequestCanonicalizerTest {
+
+    private static String get(String uri) {
+        return NetRequestCanonicalizer.canonicalize(RequestMethod.GET, uri,
+                Collections.<NetParameter>emptyList());
+    }
+
+    private static List<NetParameter> parameters(Object... nameValues) {
+        List<NetParameter> parameters = new ArrayList<>();
+        for (int i = 0; i < nameValues.length; i += 2) {
+            parameters.add(new NetParameter((String) nameValues[i], nameValues[i + 1]));
+        }
+        return parameters;
+    }
+
+    @Test
+    public void schemeAndHost_areCaseFolded_pathIsNot() {
+        assertEquals("GET http://example.com/Path", get("HTTP://Example.COM/Path"));
+    }
+
+    @Test
+    public void defaultPort_isRemoved_otherPortsKept() {
+        assertEquals("GET http://example.com/", get("http://example.com:80"));
+        assertEquals("GET https://example.com/", get("https://example.com:443/"));
+        assertEquals("GET http://example.com:8080/", get("http://example.com:8080/"));
+        assertEquals("GET https://example.com:80/", get("https://example.com:80/"));
+    }
+
+    @Test
+    public void fragment_isDropped() {
+        assertEquals(get("http://h/s?a=1"), get("http://h/s?a=1#top"));
+    }
+
+    @Test
+    public void percentEncoding_isNormalized() {
+        assertEquals(get("http://h/a-b?q=x~y"), get("http://h/%61%2db?q=x%7Ey"));
+        assertEquals("GET http://h/?q=%C3%A9", get("http://h/?q=%c3%a9"));
+        assertEquals("GET http://h/?q=%C3%A9", get("http://h/?q=é"));
+        assertEquals("GET http://h/a%20b", get("http://h/a b"));
+    }
+
+    @Test
+    public void plus_staysDistinctFromEscapedPlus() {
+        assertEquals("GET http://h/s?q=a+b", get("http://h/s?q=a+b"));
+        assertEquals("GET http://h/s?q=a%2Bb", get("http://h/s?q=a%2Bb"));
+        assertNotEquals(get("http://h/s?q=a+b"), get("http://h/s?q=a%2Bb"));
+        assertNotEquals(get("http://h/s?q=a+b"), get("http://h/s?q=a%20b"));
+    }
+
+    @Test
+    public void parameters_areSortedByName_keepingRepeatedOrder() {
+        assertEquals("GET http://h/s?a=1&b=2&b=1&c=3", get("http://h/s?c=3&b=2&a=1&b=1"));
+        String uriOrder = get("http://h/s?b=2&a=1");
+        String added = NetRequestCanonicalizer.canonicalize(RequestMethod.GET, "http://h/s",
+                parameters("a", 1, "b", 2));
+        assertEquals(uriOrder, added);
+        String mixed = NetRequestCanonicalizer.canonicalize(RequestMethod.GET, "http://h/s?b=2",
+                parameters("a", 1));
+        assertEquals(uriOrder, mixed);
+    }
+
+    @Test
+    public void postBody_isApartFromQuery() {
+        String queryA = NetRequestCanonicalizer.canonicalize(RequestMethod.POST, "http://h/s?a=1",
+                parameters("b", 2));
+        String queryB = NetRequestCanonicalizer.canonicalize(RequestMethod.POST, "http://h/s?b=2",
+                parameters("a", 1));
+        assertEquals("POST http://h/s?a=1 b=2", queryA);
+        assertEquals("POST http://h/s?b=2 a=1", queryB);
+        assertNotEquals(queryA, queryB);
+        assertEquals("POST http://h/s a=1&b=2", NetRequestCanonicalizer.canonicalize(
+                RequestMethod.POST, "http://h/s", parameters("b", 2, "a", 1)));
+    }
+
+    @Test
+    public void method_isPartOfTheForm() {
+        assertNotEquals(get("http://h/s"), NetRequestCanonicalizer.canonicalize(RequestMethod.DELETE,
+                "http://h/s", Collections.<NetParameter>emptyList()));
+    }
+}
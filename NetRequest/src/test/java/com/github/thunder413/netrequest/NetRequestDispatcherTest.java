@@ -0,0 +1,369 @@
+package com.github.thunder413.netrequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * NetRequestDispatcher unit tests, the executor keeps the promoted tasks so that they never
+ * reach the network
+ */
+public class NetRequestDispatcherTest {
+    private NetRequestDispatcher dispatcher;
+    private PendingExecutor executor;
+
+    @Before
+    public void setUp() {
+        dispatcher = new NetRequestDispatcher();
+        executor = new PendingExecutor();
+        dispatcher.setExecutorService(executor);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Task of a request to the given url
+     */
+    static NetRequestTask newTask(String uri) {
+        return newTask(uri, RequestPriority.NORMAL);
+    }
+
+    /**
+     * Task of a request to the given url with the given priority
+     */
+    static NetRequestTask newTask(String uri, RequestPriority priority) {
+        NetRequest request = NetRequestEntryTest.newRequest();
+        request.setRequestUri(uri);
+        request.setPriority(priority);
+        NetRequestEntry entry = new NetRequestEntry(new NetRequestKey(uri.hashCode(), 0), request);
+        NetRequestTask task = new NetRequestTask(entry);
+        entry.setTask(task);
+        return task;
+    }
+
+    /**
+     * Record the errors delivered to the request of a task, on the thread rejecting it
+     */
+    static List<NetErrorStatus> recordErrors(NetRequestTask task) {
+        final List<NetErrorStatus> errors = new ArrayList<>();
+        NetRequest request = task.getEntry().getNetRequest();
+        request.setDeliveryExecutor(NetDelivery.direct());
+        request.setOnResponseListener(new OnNetResponse() {
+            @Override
+            public void onNetResponseCompleted(NetResponse response) {}
+
+            @Override
+            public void onNetResponseError(NetError error) {
+                errors.add(error.getStatus());
+            }
+        });
+        return errors;
+    }
+
+    @Test
+    public void enqueue_submitsOutsideTheLock() {
+        final List<Boolean> locked = new ArrayList<>();
+        dispatcher.setExecutorService(new PendingExecutor() {
+            @Override
+            public synchronized void execute(Runnable command) {
+                locked.add(Thread.holdsLock(dispatcher));
+                super.execute(command);
+            }
+        });
+        dispatcher.enqueue(newTask("https://example.com/a"));
+        dispatcher.enqueue(newTask("https://example.com/b"));
+        assertEquals(2, locked.size());
+        assertFalse(locked.contains(Boolean.TRUE));
+        assertEquals(2, dispatcher.getRunningCount());
+    }
+
+    @Test
+    public void runAfter_runsWhileExecutorIsBusy() throws Exception {
+        final CountDownLatch ran = new CountDownLatch(1);
+        dispatcher.runAfter(new Runnable() {
+            @Override
+            public void run() {
+                ran.countDown();
+            }
+        }, 10);
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertEquals(0, executor.size());
+    }
+
+    @Test
+    public void scheduleHedge_runsWhileExecutorIsBusy() throws Exception {
+        final CountDownLatch ran = new CountDownLatch(1);
+        dispatcher.scheduleHedge(new Runnable() {
+            @Override
+            public void run() {
+                ran.countDown();
+            }
+        }, 10);
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertEquals(0, executor.size());
+    }
+
+    @Test
+    public void globalLimit_queuesTasksBeyondIt() {
+        dispatcher.setMaxRequests(2);
+        NetRequestTask first = newTask("https://a.example.com/1");
+        NetRequestTask second = newTask("https://b.example.com/1");
+        NetRequestTask third = newTask("https://c.example.com/1");
+        dispatcher.enqueue(first);
+        dispatcher.enqueue(second);
+        dispatcher.enqueue(third);
+        assertEquals(2, dispatcher.getRunningCount());
+        assertEquals(1, dispatcher.getQueuedCount());
+        assertFalse(third.isRunning());
+
+        dispatcher.finished(first);
+        assertTrue(third.isRunning());
+        assertEquals(2, dispatcher.getRunningCount());
+        assertEquals(0, dispatcher.getQueuedCount());
+    }
+
+    @Test
+    public void hostLimit_letsOtherHostsThrough() {
+        dispatcher.setMaxRequestsPerHost(1);
+        NetRequestTask first = newTask("https://a.example.com/1");
+        NetRequestTask second = newTask("https://A.example.com:8443/2");
+        NetRequestTask other = newTask("https://b.example.com/1");
+        dispatcher.enqueue(first);
+        dispatcher.enqueue(second);
+        dispatcher.enqueue(other);
+        assertTrue(first.isRunning());
+        assertFalse(second.isRunning());
+        assertTrue(other.isRunning());
+
+        dispatcher.finished(first);
+        assertTrue(second.isRunning());
+        assertEquals(2, dispatcher.getRunningCount());
+    }
+
+    @Test
+    public void raisingLimit_promotesQueuedTasks() {
+        dispatcher.setMaxRequests(1);
+        NetRequestTask first = newTask("https://a.example.com/1");
+        NetRequestTask second = newTask("https://b.example.com/1");
+        dispatcher.enqueue(first);
+        dispatcher.enqueue(second);
+        assertFalse(second.isRunning());
+        dispatcher.setMaxRequests(2);
+        assertTrue(second.isRunning());
+    }
+
+    @Test
+    public void cancel_releasesRunningSlot() {
+        dispatcher.setMaxRequests(1);
+        NetRequestTask first = newTask("https://a.example.com/1");
+        NetRequestTask second = newTask("https://b.example.com/1");
+        dispatcher.enqueue(first);
+        dispatcher.enqueue(second);
+        dispatcher.cancel(first);
+        assertTrue(second.isRunning());
+        assertEquals(1, dispatcher.getRunningCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setMaxRequests_rejectsZero() {
+        dispatcher.setMaxRequests(0);
+    }
+
+    @Test
+    public void queuedTasks_startByPriorityThenArrival() {
+        dispatcher.setMaxRequests(1);
+        NetRequestTask blocker = newTask("https://example.com/blocker");
+        NetRequestTask prefetch = newTask("https://example.com/prefetch", RequestPriority.PREFETCH);
+        NetRequestTask normal = newTask("https://example.com/normal");
+        NetRequestTask immediate = newTask("https://example.com/immediate", RequestPriority.IMMEDIATE);
+        NetRequestTask laterNormal = newTask("https://example.com/later");
+        dispatcher.enqueue(blocker);
+        dispatcher.enqueue(prefetch);
+        dispatcher.enqueue(normal);
+        dispatcher.enqueue(immediate);
+        dispatcher.enqueue(laterNormal);
+
+        dispatcher.finished(blocker);
+        assertTrue(immediate.isRunning());
+        dispatcher.finished(immediate);
+        assertTrue(normal.isRunning());
+        dispatcher.finished(normal);
+        assertTrue(laterNormal.isRunning());
+        dispatcher.finished(laterNormal);
+        assertTrue(prefetch.isRunning());
+    }
+
+    @Test
+    public void waitingTask_agesAheadOfNewerHigherPriorities() throws Exception {
+        dispatcher.setMaxRequests(1);
+        dispatcher.setPriorityAgingInterval(20);
+        NetRequestTask blocker = newTask("https://example.com/blocker");
+        NetRequestTask prefetch = newTask("https://example.com/prefetch", RequestPriority.PREFETCH);
+        dispatcher.enqueue(blocker);
+        dispatcher.enqueue(prefetch);
+        // Two levels behind, it gains one every 20 ms
+        Thread.sleep(100);
+        NetRequestTask immediate = newTask("https://example.com/immediate", RequestPriority.IMMEDIATE);
+        dispatcher.enqueue(immediate);
+
+        dispatcher.finished(blocker);
+        assertTrue(prefetch.isRunning());
+        assertFalse(immediate.isRunning());
+    }
+
+    @Test
+    public void reprioritize_movesQueuedTask() {
+        dispatcher.setMaxRequests(1);
+        NetRequestTask blocker = newTask("https://example.com/blocker");
+        NetRequestTask first = newTask("https://example.com/first");
+        NetRequestTask second = newTask("https://example.com/second");
+        dispatcher.enqueue(blocker);
+        dispatcher.enqueue(first);
+        dispatcher.enqueue(second);
+        assertTrue(dispatcher.reprioritize(second, RequestPriority.IMMEDIATE));
+        assertFalse(dispatcher.reprioritize(blocker, RequestPriority.IMMEDIATE));
+
+        dispatcher.finished(blocker);
+        assertTrue(second.isRunning());
+        assertFalse(first.isRunning());
+    }
+
+    @Test
+    public void rateLimitedHost_startsTasksAsTokensArrive() throws Exception {
+        dispatcher.setRateLimiter("a.example.com", new NetRateLimiter(20, 1));
+        NetRequestTask first = newTask("https://a.example.com/1");
+        NetRequestTask second = newTask("https://a.example.com/2");
+        NetRequestTask other = newTask("https://b.example.com/1");
+        dispatcher.enqueue(first);
+        dispatcher.enqueue(second);
+        dispatcher.enqueue(other);
+        assertTrue(first.isRunning());
+        assertFalse(second.isRunning());
+        assertTrue(other.isRunning());
+
+        // The dispatcher walks the queue again once the next token is available
+        long timeout = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!second.isRunning() && System.nanoTime() < timeout) {
+            Thread.sleep(10);
+        }
+        assertTrue(second.isRunning());
+    }
+
+    @Test
+    public void rejectNewest_failsNewTaskOnceQueueIsFull() {
+        dispatcher.setMaxRequests(1);
+        dispatcher.setMaxQueueDepth(1);
+        NetRequestTask blocker = newTask("https://example.com/blocker");
+        NetRequestTask queued = newTask("https://example.com/queued");
+        NetRequestTask urgent = newTask("https://example.com/urgent", RequestPriority.IMMEDIATE);
+        List<NetErrorStatus> queuedErrors = recordErrors(queued);
+        List<NetErrorStatus> urgentErrors = recordErrors(urgent);
+        dispatcher.enqueue(blocker);
+        dispatcher.enqueue(queued);
+        dispatcher.enqueue(urgent);
+
+        assertEquals(1, urgentErrors.size());
+        assertEquals(NetErrorStatus.QUEUE_FULL, urgentErrors.get(0));
+        assertTrue(queuedErrors.isEmpty());
+        assertEquals(1, dispatcher.getQueuedCount());
+        assertEquals(1, dispatcher.getRejectedCount());
+    }
+
+    @Test
+    public void dropOldestLowPriority_makesRoomForHigherPriorities() {
+        dispatcher.setMaxRequests(1);
+        dispatcher.setMaxQueueDepth(2);
+        dispatcher.setOverflowPolicy(OverflowPolicy.DROP_OLDEST_LOW_PRIORITY);
+        NetRequestTask blocker = newTask("https://example.com/blocker");
+        NetRequestTask oldPrefetch = newTask("https://example.com/old", RequestPriority.PREFETCH);
+        NetRequestTask newPrefetch = newTask("https://example.com/new", RequestPriority.PREFETCH);
+        NetRequestTask normal = newTask("https://example.com/normal");
+        List<NetErrorStatus> oldErrors = recordErrors(oldPrefetch);
+        List<NetErrorStatus> newErrors = recordErrors(newPrefetch);
+        dispatcher.enqueue(blocker);
+        dispatcher.enqueue(oldPrefetch);
+        dispatcher.enqueue(newPrefetch);
+        dispatcher.enqueue(normal);
+
+        // The oldest of the lowest priority is dropped
+        assertEquals(1, oldErrors.size());
+        assertEquals(NetErrorStatus.QUEUE_FULL, oldErrors.get(0));
+        assertTrue(newErrors.isEmpty());
+        assertEquals(2, dispatcher.getQueuedCount());
+
+        // Every queued task has a higher priority than the new one
+        NetRequestTask lateNormal = newTask("https://example.com/late");
+        dispatcher.enqueue(lateNormal);
+        assertEquals(1, newErrors.size());
+        NetRequestTask latePrefetch = newTask("https://example.com/latePrefetch", RequestPriority.PREFETCH);
+        List<NetErrorStatus> lateErrors = recordErrors(latePrefetch);
+        dispatcher.enqueue(latePrefetch);
+        assertEquals(1, lateErrors.size());
+        assertEquals(NetErrorStatus.QUEUE_FULL, lateErrors.get(0));
+        assertEquals(3, dispatcher.getRejectedCount());
+
+        dispatcher.finished(blocker);
+        assertTrue(normal.isRunning());
+    }
+
+    @Test
+    public void block_waitsForRoom() throws Exception {
+        dispatcher.setMaxRequests(1);
+        dispatcher.setMaxQueueDepth(1);
+        dispatcher.setOverflowPolicy(OverflowPolicy.BLOCK);
+        NetRequestTask blocker = newTask("https://example.com/blocker");
+        NetRequestTask queued = newTask("https://example.com/queued");
+        final NetRequestTask waiting = newTask("https://example.com/waiting");
+        List<NetErrorStatus> errors = recordErrors(waiting);
+        dispatcher.enqueue(blocker);
+        dispatcher.enqueue(queued);
+
+        final CountDownLatch enqueued = new CountDownLatch(1);
+        Thread caller = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                dispatcher.enqueue(waiting);
+                enqueued.countDown();
+            }
+        });
+        caller.start();
+        assertFalse(enqueued.await(100, TimeUnit.MILLISECONDS));
+
+        dispatcher.finished(blocker);
+        assertTrue(enqueued.await(5, TimeUnit.SECONDS));
+        assertTrue(queued.isRunning());
+        assertEquals(1, dispatcher.getQueuedCount());
+        assertTrue(errors.isEmpty());
+        assertEquals(0, dispatcher.getRejectedCount());
+    }
+
+    @Test
+    public void block_rejectsOnceDeadlineElapses() throws Exception {
+        dispatcher.setMaxRequests(1);
+        dispatcher.setMaxQueueDepth(1);
+        dispatcher.setOverflowPolicy(OverflowPolicy.BLOCK);
+        dispatcher.enqueue(newTask("https://example.com/blocker"));
+        dispatcher.enqueue(newTask("https://example.com/queued"));
+        NetRequest request = NetRequestEntryTest.newRequest();
+        request.setRequestUri("https://example.com/late");
+        request.setTimeout(100);
+        NetRequestEntry entry = new NetRequestEntry(new NetRequestKey(3, 4), request);
+        NetRequestTask late = new NetRequestTask(entry);
+        entry.setTask(late);
+        List<NetErrorStatus> errors = recordErrors(late);
+
+        dispatcher.enqueue(late);
+        assertEquals(1, errors.size());
+        assertEquals(NetErrorStatus.QUEUE_FULL, errors.get(0));
+    }
+}
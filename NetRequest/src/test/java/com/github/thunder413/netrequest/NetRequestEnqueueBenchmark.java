@@ -0,0 +1,96 @@
+package com.github.thunder413.netrequest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.thunder413.netrequest.utils.HttpRequest;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Enqueue cost benchmark under a cancel-heavy workload: a burst of requests is queued and
+ * most of them are cancelled before running. The entry-only path only derives the key and
+ * registers the entry, the former path also built the HttpRequest of every queued request.
+ * <p>
+ * Run it on the unit test classpath with <code>org.openjdk.jmh.Main NetRequestEnqueueBenchmark -prof gc</code>
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NetRequestEnqueueBenchmark {
+    private static final int BURST = 64;
+
+    /**
+     * Percentage of the burst cancelled while queued
+     */
+    @Param({"50", "90"})
+    public int cancelPercent;
+
+    private NetRequestManager manager;
+    private NetRequest[] requests;
+
+    @Setup
+    public void setup() {
+        manager = NetRequestManager.getInstance();
+        requests = new NetRequest[BURST];
+        for (int i = 0; i < BURST; i++) {
+            NetRequest netRequest = NetRequestEntryTest.newRequest();
+            netRequest.setRequestUri("https://api.example.com/v2/feed/" + i);
+            netRequest.addParameter("page", i);
+            netRequest.addParameter("locale", "fr_FR");
+            requests[i] = netRequest;
+        }
+    }
+
+    /**
+     * Whether or not the request at the given index of the burst is cancelled while queued
+     */
+    private boolean isCanceled(int index) {
+        return index * 100 < cancelPercent * BURST;
+    }
+
+    @Benchmark
+    public int entryOnly() {
+        int started = 0;
+        for (int i = 0; i < BURST; i++) {
+            NetRequestEntry entry = new NetRequestEntry(manager.getKey(requests[i]), requests[i]);
+            if (isCanceled(i)) {
+                entry.cancel();
+            } else if (entry.start()) {
+                // Built once a worker picks the entry up
+                manager.buildRequest(requests[i]);
+                started++;
+            }
+        }
+        return started;
+    }
+
+    @Benchmark
+    public int buildAtEnqueue() {
+        int started = 0;
+        for (int i = 0; i < BURST; i++) {
+            HttpRequest request = manager.buildRequest(requests[i]);
+            NetRequestEntry entry = new NetRequestEntry(manager.getKey(requests[i]), requests[i]);
+            if (isCanceled(i)) {
+                entry.cancel();
+                request.disconnect();
+            } else if (entry.start()) {
+                started++;
+            }
+        }
+        return started;
+    }
+}
@@ -0,0 +1,63 @@
+package com.github.thunder413.netrequest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registry entry contention benchmark, threads attach and detach their own request on a shared
+ * entry as addToQueue and cancel do for identical requests.
+ * <p>
+ * Run it on the unit test classpath with <code>org.openjdk.jmh.Main NetRequestEntryBenchmark</code>,
+ * <code>-t</code> changes the number of threads
+ * </p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class NetRequestEntryBenchmark {
+
+    /**
+     * Entry shared by every thread
+     */
+    @State(Scope.Benchmark)
+    public static class SharedEntry {
+        NetRequestEntry entry;
+
+        @Setup
+        public void setup() {
+            entry = new NetRequestEntry(new NetRequestKey(1, 2), NetRequestEntryTest.newRequest());
+        }
+    }
+
+    /**
+     * Request of a thread
+     */
+    @State(Scope.Thread)
+    public static class ThreadRequest {
+        NetRequest request;
+
+        @Setup
+        public void setup() {
+            request = NetRequestEntryTest.newRequest();
+        }
+    }
+
+    @Benchmark
+    public boolean attachDetach(SharedEntry shared, ThreadRequest thread) {
+        return shared.entry.attach(thread.request) & shared.entry.detach(thread.request);
+    }
+}
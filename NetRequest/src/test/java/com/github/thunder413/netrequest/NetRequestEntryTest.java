@@ -0,0 +1,178 @@
+package com.github.thunder413.netrequest;
+
+import android.content.ContextWrapper;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * NetRequestEntry unit tests
+ */
+public class NetRequestEntryTest {
+    private static final NetRequestKey KEY = new NetRequestKey(1, 2);
+
+    static NetRequest newRequest() {
+        return new NetRequest(new ContextWrapper(null));
+    }
+
+    @Test
+    public void newEntry_isQueuedWithItsRequest() {
+        NetRequest request = newRequest();
+        NetRequestEntry entry = new NetRequestEntry(KEY, request);
+        assertEquals(NetRequestEntry.State.QUEUED, entry.getState());
+        assertEquals(1, entry.getRequests().size());
+        assertSame(request, entry.getRequests().get(0));
+        assertSame(request, entry.getNetRequest());
+        assertEquals(KEY, entry.getKey());
+    }
+
+    @Test
+    public void attach_addsRequestOnce() {
+        NetRequest other = newRequest();
+        NetRequestEntry entry = new NetRequestEntry(KEY, newRequest());
+        assertTrue(entry.attach(other));
+        assertTrue(entry.attach(other));
+        assertEquals(2, entry.getRequests().size());
+    }
+
+    @Test
+    public void attach_failsOnceDone() {
+        NetRequestEntry finished = new NetRequestEntry(KEY, newRequest());
+        assertNotNull(finished.finish());
+        assertFalse(finished.attach(newRequest()));
+
+        NetRequestEntry canceled = new NetRequestEntry(KEY, newRequest());
+        assertTrue(canceled.cancel());
+        assertFalse(canceled.attach(newRequest()));
+    }
+
+    @Test
+    public void detach_lastRequestCancelsEntry() {
+        NetRequest request = newRequest();
+        NetRequest other = newRequest();
+        NetRequestEntry entry = new NetRequestEntry(KEY, request);
+        entry.attach(other);
+        assertTrue(entry.detach(request));
+        assertEquals(NetRequestEntry.State.QUEUED, entry.getState());
+        assertFalse(entry.detach(other));
+        assertEquals(NetRequestEntry.State.CANCELED, entry.getState());
+    }
+
+    @Test
+    public void start_onlyFromQueued() {
+        NetRequestEntry entry = new NetRequestEntry(KEY, newRequest());
+        assertTrue(entry.start());
+        assertEquals(NetRequestEntry.State.RUNNING, entry.getState());
+        assertFalse(entry.start());
+        assertNotNull(entry.finish());
+        assertFalse(entry.start());
+    }
+
+    @Test
+    public void finish_andCancel_happenOnce() {
+        NetRequestEntry entry = new NetRequestEntry(KEY, newRequest());
+        assertNotNull(entry.finish());
+        assertNull(entry.finish());
+        assertFalse(entry.cancel());
+        assertEquals(NetRequestEntry.State.FINISHED, entry.getState());
+    }
+
+    @Test
+    public void priority_isHighestOfAttachedRequests() {
+        NetRequest prefetch = newRequest();
+        prefetch.setPriority(RequestPriority.PREFETCH);
+        NetRequest immediate = newRequest();
+        immediate.setPriority(RequestPriority.IMMEDIATE);
+        NetRequestEntry entry = new NetRequestEntry(KEY, prefetch);
+        assertEquals(RequestPriority.PREFETCH, entry.getPriority());
+        entry.attach(immediate);
+        assertEquals(RequestPriority.IMMEDIATE, entry.getPriority());
+        entry.detach(immediate);
+        assertEquals(RequestPriority.PREFETCH, entry.getPriority());
+    }
+
+    /**
+     * Requests attached concurrently with the delivery either get the result or are told the
+     * entry is done, none is lost
+     */
+    @Test
+    public void attach_racingFinish_neverLosesRequest() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            for (int round = 0; round < 200; round++) {
+                final NetRequestEntry entry = new NetRequestEntry(KEY, newRequest());
+                final CountDownLatch start = new CountDownLatch(1);
+                List<Future<NetRequest>> attached = new ArrayList<>();
+                for (int i = 0; i < 3; i++) {
+                    final NetRequest request = newRequest();
+                    attached.add(pool.submit(new Callable<NetRequest>() {
+                        @Override
+                        public NetRequest call() throws Exception {
+                            start.await();
+                            return entry.attach(request) ? request : null;
+                        }
+                    }));
+                }
+                start.countDown();
+                List<NetRequest> delivered = entry.finish();
+                for (Future<NetRequest> future : attached) {
+                    NetRequest request = future.get(5, TimeUnit.SECONDS);
+                    if (request != null) {
+                        assertTrue(delivered.contains(request));
+                    }
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Threads attaching and detaching requests on a shared entry, as addToQueue and cancel do
+     * for identical requests, leave it with its own request only
+     * @see NetRequestEntryBenchmark
+     */
+    @Test
+    public void attachDetach_underContention_keepsEntryConsistent() throws Exception {
+        final int threads = 8;
+        final int operations = 2000;
+        final NetRequestEntry entry = new NetRequestEntry(KEY, newRequest());
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < threads; t++) {
+                final NetRequest request = newRequest();
+                futures.add(pool.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        start.await();
+                        for (int i = 0; i < operations; i++) {
+                            assertTrue(entry.attach(request));
+                            assertTrue(entry.detach(request));
+                        }
+                        return null;
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, entry.getRequests().size());
+        assertEquals(NetRequestEntry.State.QUEUED, entry.getState());
+    }
+}
@@ -0,0 +1,98 @@
+package com.github.thunder413.netrequest;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * NetRequestIndex unit tests
+ */
+public class NetRequestIndexTest {
+
+    @Test
+    public void add_groupsRequestsByAttribute() {
+        NetRequestIndex index = new NetRequestIndex(false);
+        NetRequest first = NetRequestEntryTest.newRequest();
+        NetRequest second = NetRequestEntryTest.newRequest();
+        index.add("feed", first);
+        index.add(new String("feed"), second);
+        index.add("profile", NetRequestEntryTest.newRequest());
+        index.add(null, NetRequestEntryTest.newRequest());
+        assertEquals(2, index.get("feed").size());
+        assertEquals(1, index.get("profile").size());
+        assertTrue(index.get(null).isEmpty());
+
+        index.remove(first);
+        assertEquals(1, index.get("feed").size());
+        assertSame(second, index.get("feed").get(0));
+        index.remove(second);
+        assertTrue(index.get("feed").isEmpty());
+    }
+
+    @Test
+    public void add_keepsFirstAttributeOfRequest() {
+        NetRequestIndex index = new NetRequestIndex(false);
+        NetRequest request = NetRequestEntryTest.newRequest();
+        index.add("feed", request);
+        index.add("profile", request);
+        assertEquals(1, index.get("feed").size());
+        assertTrue(index.get("profile").isEmpty());
+    }
+
+    @Test
+    public void weakKeys_areComparedByIdentity() {
+        NetRequestIndex index = new NetRequestIndex(true);
+        String key = new String("activity");
+        NetRequest request = NetRequestEntryTest.newRequest();
+        index.add(key, request);
+        assertEquals(1, index.get(key).size());
+        assertTrue(index.get(new String("activity")).isEmpty());
+        index.remove(request);
+        assertTrue(index.get(key).isEmpty());
+    }
+
+    @Test
+    public void concurrentAddAndRemove_leaveIndexConsistent() throws Exception {
+        final int threads = 8;
+        final int operations = 2000;
+        final NetRequestIndex index = new NetRequestIndex(false);
+        final NetRequest kept = NetRequestEntryTest.newRequest();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < threads; t++) {
+                final NetRequest request = NetRequestEntryTest.newRequest();
+                futures.add(pool.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        start.await();
+                        for (int i = 0; i < operations; i++) {
+                            index.add("feed", request);
+                            index.remove(request);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            start.countDown();
+            index.add("feed", kept);
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, index.get("feed").size());
+        assertSame(kept, index.get("feed").get(0));
+    }
+}
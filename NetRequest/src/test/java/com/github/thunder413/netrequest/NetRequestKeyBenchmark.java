@@ -0,0 +1,72 @@
+package com.github.thunder413.netrequest;
+
+import com.github.thunder413.netrequest.utils.NetUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Key derivation benchmark, the streamed MurmurHash3 key against the former
+ * concatenated url MD5 hex string.
+ * <p>
+ * Run it on the unit test classpath with <code>org.openjdk.jmh.Main NetRequestKeyBenchmark -prof gc</code>
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NetRequestKeyBenchmark {
+    private NetRequestManager manager;
+    private NetRequest netRequest;
+
+    @Setup
+    public void setup() {
+        manager = NetRequestManager.getInstance();
+        netRequest = NetRequestEntryTest.newRequest();
+        netRequest.setRequestUri("https://api.example.com/v2/catalog/search");
+        netRequest.addParameter("query", "wireless headphones");
+        netRequest.addParameter("page", 3);
+        netRequest.addParameter("sort", "price_asc");
+        netRequest.addParameter("locale", "fr_FR");
+    }
+
+    @Benchmark
+    public NetRequestKey murmurKey() {
+        return manager.getKey(netRequest);
+    }
+
+    @Benchmark
+    public String md5Key() {
+        String uri = appendParameters(netRequest.getRequestUri(), manager.getParameters());
+        uri = appendParameters(uri, netRequest.getParameters());
+        return NetUtils.md5(uri);
+    }
+
+    /**
+     * Former url building of the key
+     */
+    private static String appendParameters(String url, String params) {
+        if(params == null || params.isEmpty()) {
+            return url;
+        }
+        if(url.contains("?")) {
+            url += "&" + params;
+        } else {
+            url += "?" + params;
+        }
+        return url;
+    }
+}
@@ -0,0 +1,116 @@
+package com.github.thunder413.netrequest;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * NetRequestKey unit tests, the MurmurHash3 x64 128 vectors are the ones of the reference
+ * implementation with seed 0, high and low being its first and second 64 bits words
+ */
+public class NetRequestKeyTest {
+
+    private static NetRequestKey hash(String value) {
+        return new NetRequestKey.Builder().append(value).build();
+    }
+
+    private static void assertHash(String value, long high, long low) {
+        NetRequestKey key = hash(value);
+        assertEquals(value, high, key.getHigh());
+        assertEquals(value, low, key.getLow());
+    }
+
+    @Test
+    public void builder_matchesReferenceVectors() {
+        assertHash("", 0x0000000000000000L, 0x0000000000000000L);
+        assertHash("a", 0x85555565f6597889L, 0xe6b53a48510e895aL);
+        assertHash("hello", 0xcbd8a7b341bd9b02L, 0x5b1e906a48ae1d19L);
+        assertHash("The quick brown fox jumps over the lazy dog", 0xe34bbc7bbc071b6cL, 0x7a433ca9c49a9347L);
+        assertHash("GET https://example.com/path?a=1&b=%C3%A9", 0xd4e3104cebe6dc93L, 0x477261742cbdf27bL);
+    }
+
+    @Test
+    public void builder_matchesReferenceVectorsAroundBlockSize() {
+        assertHash("0123456789abcde", 0xa62dd5f6c0bf2351L, 0x4fccf50c7c544cf0L);
+        assertHash("0123456789abcdef", 0x4be06d94cf4ad1a7L, 0x87c35b5c63a708daL);
+        assertHash("0123456789abcdef0", 0xeb24ae8785a5c075L, 0x73fb68b3313128caL);
+    }
+
+    @Test
+    public void builder_encodesCharactersAsUtf8() {
+        assertHash("café €", 0x38cabccda76c94eeL, 0xe5b182422f79fe55L);
+    }
+
+    @Test
+    public void builder_isIndependentOfChunking() {
+        NetRequestKey chunked = new NetRequestKey.Builder()
+                .append("The quick brown ")
+                .append('f')
+                .append("ox jumps over the lazy dog")
+                .build();
+        assertEquals(hash("The quick brown fox jumps over the lazy dog"), chunked);
+    }
+
+    @Test
+    public void toString_isHighThenLowInHex() {
+        assertEquals("cbd8a7b341bd9b025b1e906a48ae1d19", hash("hello").toString());
+        assertEquals("00000000000000000000000000000000", hash("").toString());
+    }
+
+    @Test
+    public void keys_ofIdenticalRequests_areEqualAndHashConsistently() {
+        NetRequestManager manager = NetRequestManager.getInstance();
+        NetRequest first = NetRequestEntryTest.newRequest();
+        first.setRequestUri("https://Example.com:443/search#top");
+        first.addParameter("q", "net");
+        first.addParameter("page", 2);
+        NetRequest second = NetRequestEntryTest.newRequest();
+        second.setRequestUri("https://example.com/search");
+        second.addParameter("page", 2);
+        second.addParameter("q", "net");
+
+        NetRequestKey key = manager.getKey(first);
+        assertEquals(key, manager.getKey(first));
+        assertEquals(key, manager.getKey(second));
+        assertEquals(key.hashCode(), manager.getKey(second).hashCode());
+        assertEquals(key.toString(), manager.getKey(second).toString());
+
+        Map<NetRequestKey, String> map = new HashMap<>();
+        map.put(key, "first");
+        assertEquals("first", map.get(manager.getKey(second)));
+    }
+
+    @Test
+    public void key_isHashOfCanonicalForm() {
+        NetRequestManager manager = NetRequestManager.getInstance();
+        NetRequest request = NetRequestEntryTest.newRequest();
+        request.setRequestUri("HTTPS://Example.com:443/a%2db/caf\u00e9?z=1&q=a+b&q=%2B#frag");
+        request.addParameter("name", "caf\u00e9 \ud83d\ude00");
+        request.addParameter("id", 7);
+        assertEquals(hash(manager.getCanonicalForm(request) + "\tTEXT"), manager.getKey(request));
+        request.setRequestMethod(RequestMethod.POST);
+        request.setRequestDataType(RequestDataType.JSON);
+        assertEquals(hash(manager.getCanonicalForm(request) + "\tJSON"), manager.getKey(request));
+    }
+
+    @Test
+    public void keys_ofDifferentRequests_differ() {
+        NetRequestManager manager = NetRequestManager.getInstance();
+        NetRequest get = NetRequestEntryTest.newRequest();
+        get.setRequestUri("https://example.com/search");
+        get.addParameter("q", "net");
+        NetRequest other = NetRequestEntryTest.newRequest();
+        other.setRequestUri("https://example.com/search");
+        other.addParameter("q", "request");
+        NetRequest post = NetRequestEntryTest.newRequest();
+        post.setRequestUri("https://example.com/search");
+        post.addParameter("q", "net");
+        post.setRequestMethod(RequestMethod.POST);
+
+        assertNotEquals(manager.getKey(get), manager.getKey(other));
+        assertNotEquals(manager.getKey(get), manager.getKey(post));
+    }
+}
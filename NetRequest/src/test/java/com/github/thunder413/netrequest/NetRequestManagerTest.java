@@ -0,0 +1,292 @@
+package com.github.thunder413.netrequest;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.ContextWrapper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * NetRequestManager unit tests, queued tasks are held by a {@link PendingExecutor}
+ */
+public class NetRequestManagerTest {
+    private final List<NetRequest> requests = new ArrayList<>();
+    private PendingExecutor executor;
+
+    @Before
+    public void setUp() {
+        executor = new PendingExecutor();
+        NetRequestManager.getInstance().setExecutorService(executor);
+    }
+
+    @After
+    public void tearDown() {
+        for (NetRequest request : requests) {
+            request.cancel();
+        }
+        NetRequestManager.getInstance().setExecutorService(null);
+    }
+
+    private NetRequest queue(RequestMethod method, RequestDataType dataType) {
+        NetRequest request = NetRequestEntryTest.newRequest();
+        request.setRequestUri("https://coalesce.example.com/feed");
+        request.setRequestMethod(method);
+        request.setRequestDataType(dataType);
+        request.addParameter("page", 1);
+        requests.add(request);
+        return request;
+    }
+
+    private static void add(NetRequest request) {
+        NetRequestManager.getInstance().addToQueue(request);
+    }
+
+    @Test
+    public void identicalGets_shareOneTask() {
+        NetRequest first = queue(RequestMethod.GET, RequestDataType.TEXT);
+        NetRequest second = queue(RequestMethod.GET, RequestDataType.TEXT);
+        add(first);
+        add(second);
+        assertSame(first.getEntry(), second.getEntry());
+        assertEquals(2, first.getEntry().getRequests().size());
+        assertEquals(1, executor.size());
+    }
+
+    @Test
+    public void otherResponseType_isNotShared() {
+        NetRequest text = queue(RequestMethod.GET, RequestDataType.TEXT);
+        NetRequest json = queue(RequestMethod.GET, RequestDataType.JSON);
+        add(text);
+        add(json);
+        assertNotEquals(text.getKey(), json.getKey());
+        assertNotSame(text.getEntry(), json.getEntry());
+        assertEquals(2, executor.size());
+    }
+
+    @Test
+    public void posts_areNeverShared() {
+        NetRequest first = queue(RequestMethod.POST, RequestDataType.TEXT);
+        NetRequest second = queue(RequestMethod.POST, RequestDataType.TEXT);
+        add(first);
+        add(second);
+        assertEquals(first.getKey(), second.getKey());
+        assertNotSame(first.getEntry(), second.getEntry());
+        assertEquals(2, executor.size());
+    }
+
+    @Test
+    public void otherPolicies_areNotShared() {
+        NetRequest base = queue(RequestMethod.GET, RequestDataType.TEXT);
+        NetRequest timeout = queue(RequestMethod.GET, RequestDataType.TEXT);
+        timeout.setTimeout(5000);
+        NetRequest retry = queue(RequestMethod.GET, RequestDataType.TEXT);
+        retry.setRetryPolicy(new RetryPolicy());
+        NetRequest hedged = queue(RequestMethod.GET, RequestDataType.TEXT);
+        hedged.setHedgingEnabled(true);
+        add(base);
+        add(timeout);
+        add(retry);
+        add(hedged);
+        assertEquals(1, base.getEntry().getRequests().size());
+        assertEquals(4, executor.size());
+        // A request canceled alone does not cancel the registered one
+        timeout.cancel();
+        assertTrue(NetRequestManager.getInstance().isQueued(base));
+    }
+
+    private NetRequest queue(Context context, String path) {
+        NetRequest request = new NetRequest(context);
+        request.setRequestUri("https://index.example.com/" + path);
+        requests.add(request);
+        return request;
+    }
+
+    @Test
+    public void cancelAll_byTag_cancelsTaggedRequestsOnly() {
+        Context context = new ContextWrapper(null);
+        NetRequest first = queue(context, "a");
+        first.setTag("feed");
+        NetRequest second = queue(context, "b");
+        second.setTag("feed");
+        NetRequest other = queue(context, "c");
+        other.setTag("profile");
+        NetRequest untagged = queue(context, "d");
+        add(first);
+        add(second);
+        add(other);
+        add(untagged);
+
+        NetRequestManager manager = NetRequestManager.getInstance();
+        assertEquals(2, manager.cancelAll("feed"));
+        assertFalse(manager.isQueued(first));
+        assertFalse(manager.isQueued(second));
+        assertTrue(manager.isQueued(other));
+        assertTrue(manager.isQueued(untagged));
+        assertEquals(0, manager.cancelAll("feed"));
+    }
+
+    @Test
+    public void cancelAll_byDefaultTag_cancelsNothing() {
+        Context context = new ContextWrapper(null);
+        NetRequest first = queue(context, "a");
+        NetRequest second = queue(context, "b");
+        add(first);
+        add(second);
+
+        NetRequestManager manager = NetRequestManager.getInstance();
+        assertEquals(0, manager.cancelAll(first.getTag()));
+        assertTrue(manager.isQueued(first));
+        assertTrue(manager.isQueued(second));
+    }
+
+    @Test
+    public void cancelAll_byContext_cancelsRequestsOfThatContextOnly() {
+        Context context = new ContextWrapper(null);
+        Context other = new ContextWrapper(null);
+        NetRequest first = queue(context, "a");
+        NetRequest second = queue(context, "b");
+        NetRequest third = queue(other, "c");
+        add(first);
+        add(second);
+        add(third);
+
+        NetRequestManager manager = NetRequestManager.getInstance();
+        assertEquals(2, manager.cancelAll(context));
+        assertFalse(manager.isQueued(first));
+        assertFalse(manager.isQueued(second));
+        assertTrue(manager.isQueued(third));
+        assertEquals(1, manager.cancelAll(other));
+        assertFalse(manager.isQueued(third));
+    }
+
+    /**
+     * Listener of a rejected request loading another request from its error callback
+     */
+    private final class ReloadingListener implements OnNetResponse {
+        final List<NetErrorStatus> errors = new ArrayList<>();
+        final List<Boolean> locked = new ArrayList<>();
+        private final String uri;
+
+        ReloadingListener(String uri) {
+            this.uri = uri;
+        }
+
+        @Override
+        public void onNetResponseCompleted(NetResponse response) {}
+
+        @Override
+        public void onNetResponseError(NetError error) {
+            errors.add(error.getStatus());
+            locked.add(Thread.holdsLock(NetRequestManager.getInstance().getDispatcher()));
+            if (errors.size() == 1) {
+                NetRequest reload = queue(new ContextWrapper(null), "reload");
+                reload.setDeliveryExecutor(NetDelivery.direct());
+                reload.setOnResponseListener(this);
+                reload.load(uri);
+            }
+        }
+    }
+
+    @Test
+    public void rejectionListener_reloadingDirectly_doesNotDeadlock() throws Exception {
+        final NetRequestManager manager = NetRequestManager.getInstance();
+        manager.setConnectivityMonitor(new ManualConnectivityMonitor(true));
+        manager.setMaxRequests(1).setMaxQueueDepth(1);
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        try {
+            final Context context = new ContextWrapper(null);
+            add(queue(context, "running"));
+            add(queue(context, "queued"));
+            final ReloadingListener listener = new ReloadingListener("https://index.example.com/again");
+            final NetRequest rejected = queue(context, "rejected");
+            rejected.setDeliveryExecutor(NetDelivery.direct());
+            rejected.setOnResponseListener(listener);
+            Future<?> load = caller.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    rejected.load();
+                    return null;
+                }
+            });
+            load.get(5, TimeUnit.SECONDS);
+
+            // The queue is still full when the listener loads again
+            assertEquals(2, listener.errors.size());
+            assertEquals(NetErrorStatus.QUEUE_FULL, listener.errors.get(0));
+            assertEquals(NetErrorStatus.QUEUE_FULL, listener.errors.get(1));
+            assertFalse(listener.locked.contains(Boolean.TRUE));
+            assertEquals(1, manager.getDispatcher().getQueuedCount());
+            assertEquals(1, manager.getDispatcher().getRunningCount());
+        } finally {
+            caller.shutdownNow();
+            manager.setMaxRequests(NetRequestDispatcher.DEFAULT_MAX_REQUESTS)
+                    .setMaxQueueDepth(Integer.MAX_VALUE)
+                    .setConnectivityMonitor(null);
+        }
+    }
+
+    /**
+     * Activity whose finishing and configuration change states are set by the test
+     */
+    private static final class TestActivity extends Activity {
+        boolean finishing;
+        boolean changingConfigurations;
+
+        @Override
+        public boolean isFinishing() {
+            return finishing;
+        }
+
+        @Override
+        public boolean isChangingConfigurations() {
+            return changingConfigurations;
+        }
+    }
+
+    @Test
+    public void activityFinishing_cancelsItsRequests() {
+        TestActivity activity = new TestActivity();
+        NetRequest first = queue(activity, "a");
+        NetRequest kept = queue(activity, "b");
+        kept.setCancelOnContextDie(false);
+        NetRequest other = queue(new ContextWrapper(null), "c");
+        add(first);
+        add(kept);
+        add(other);
+
+        activity.finishing = true;
+        NetRequestManager manager = NetRequestManager.getInstance();
+        manager.lifecycleCallbacks.onActivityDestroyed(activity);
+        assertFalse(manager.isQueued(first));
+        assertTrue(manager.isQueued(kept));
+        assertTrue(manager.isQueued(other));
+    }
+
+    @Test
+    public void activityRecreated_keepsItsRequests() {
+        TestActivity activity = new TestActivity();
+        NetRequest request = queue(activity, "a");
+        add(request);
+
+        NetRequestManager manager = NetRequestManager.getInstance();
+        activity.changingConfigurations = true;
+        manager.lifecycleCallbacks.onActivityDestroyed(activity);
+        assertTrue(manager.isQueued(request));
+        // Destroyed by the system without finishing, it will be recreated
+        activity.changingConfigurations = false;
+        manager.lifecycleCallbacks.onActivityDestroyed(activity);
+        assertTrue(manager.isQueued(request));
+    }
+}
@@ -0,0 +1,62 @@
+package com.github.thunder413.netrequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor keeping submitted commands until a test runs them, so that dispatched tasks
+ * never reach the network
+ */
+class PendingExecutor extends AbstractExecutorService {
+    private final List<Runnable> commands = new ArrayList<>();
+    private boolean shutdown;
+
+    @Override
+    public synchronized void execute(Runnable command) {
+        commands.add(command);
+    }
+
+    /**
+     * Number of commands waiting
+     */
+    synchronized int size() {
+        return commands.size();
+    }
+
+    /**
+     * Remove the waiting commands without running them
+     */
+    synchronized List<Runnable> drain() {
+        List<Runnable> drained = new ArrayList<>(commands);
+        commands.clear();
+        return drained;
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        shutdown = true;
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown();
+        return drain();
+    }
+
+    @Override
+    public synchronized boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public synchronized boolean isTerminated() {
+        return shutdown && commands.isEmpty();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) {
+        return isTerminated();
+    }
+}
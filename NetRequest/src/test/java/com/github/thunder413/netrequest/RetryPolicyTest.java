@@ -0,0 +1,91 @@
+package com.github.thunder413.netrequest;
+
+import org.junit.Test;
+
+import java.util.EnumSet;
+
+import static org.junit.Assert.*;
+
+/**
+ * RetryPolicy unit tests
+ */
+public class RetryPolicyTest {
+
+    @Test
+    public void getDelay_staysWithinExponentialCeiling() {
+        RetryPolicy policy = new RetryPolicy().setBaseDelay(100).setMaxDelay(1000);
+        for (int i = 0; i < 1000; i++) {
+            long first = policy.getDelay(1, -1);
+            assertTrue(first >= 0 && first < 200);
+            long second = policy.getDelay(2, -1);
+            assertTrue(second >= 0 && second < 400);
+            long capped = policy.getDelay(40, -1);
+            assertTrue(capped >= 0 && capped < 1000);
+        }
+    }
+
+    @Test
+    public void getDelay_isJittered() {
+        RetryPolicy policy = new RetryPolicy().setBaseDelay(1000).setMaxDelay(60000);
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < 1000; i++) {
+            long delay = policy.getDelay(3, -1);
+            min = Math.min(min, delay);
+            max = Math.max(max, delay);
+        }
+        // Full jitter spreads the delays over the whole [0, 8000) range
+        assertTrue(min < 2000);
+        assertTrue(max > 6000);
+    }
+
+    @Test
+    public void getDelay_honorsRetryAfter() {
+        RetryPolicy policy = new RetryPolicy().setBaseDelay(100).setMaxDelay(5000);
+        assertEquals(0, policy.getDelay(1, 0));
+        assertEquals(3000, policy.getDelay(1, 3000));
+        assertEquals(5000, policy.getDelay(1, 5000));
+    }
+
+    @Test
+    public void getDelay_givesUpWhenRetryAfterExceedsMaxDelay() {
+        RetryPolicy policy = new RetryPolicy().setMaxDelay(5000);
+        assertEquals(-1, policy.getDelay(1, 5001));
+        assertEquals(-1, policy.getDelay(1, 3600000));
+    }
+
+    @Test
+    public void shouldRetry_onlyIdempotentMethodsByDefault() {
+        RetryPolicy policy = new RetryPolicy();
+        assertTrue(policy.shouldRetry(RequestMethod.GET, NetErrorStatus.SERVER_ERROR, 503, 1));
+        assertTrue(policy.shouldRetry(RequestMethod.PUT, NetErrorStatus.SERVER_ERROR, 503, 1));
+        assertTrue(policy.shouldRetry(RequestMethod.DELETE, NetErrorStatus.TIMEOUT, 0, 1));
+        assertFalse(policy.shouldRetry(RequestMethod.POST, NetErrorStatus.SERVER_ERROR, 503, 1));
+        policy.setRetryPost(true);
+        assertTrue(policy.shouldRetry(RequestMethod.POST, NetErrorStatus.SERVER_ERROR, 503, 1));
+    }
+
+    @Test
+    public void shouldRetry_skipsClientErrorsButTooManyRequests() {
+        RetryPolicy policy = new RetryPolicy();
+        assertFalse(policy.shouldRetry(RequestMethod.GET, NetErrorStatus.SERVER_ERROR, 400, 1));
+        assertFalse(policy.shouldRetry(RequestMethod.GET, NetErrorStatus.SERVER_ERROR, 403, 1));
+        assertTrue(policy.shouldRetry(RequestMethod.GET, NetErrorStatus.SERVER_ERROR, 429, 1));
+        assertFalse(policy.shouldRetry(RequestMethod.GET, NetErrorStatus.NOT_FOUND, 404, 1));
+    }
+
+    @Test
+    public void shouldRetry_stopsAfterMaxAttemptsAndUnlistedStatuses() {
+        RetryPolicy policy = new RetryPolicy().setMaxAttempts(2);
+        assertTrue(policy.shouldRetry(RequestMethod.GET, NetErrorStatus.REQUEST_ERROR, 0, 1));
+        assertFalse(policy.shouldRetry(RequestMethod.GET, NetErrorStatus.REQUEST_ERROR, 0, 2));
+        policy.setRetryableStatuses(EnumSet.of(NetErrorStatus.TIMEOUT));
+        assertFalse(policy.shouldRetry(RequestMethod.GET, NetErrorStatus.REQUEST_ERROR, 0, 1));
+        assertTrue(policy.shouldRetry(RequestMethod.GET, NetErrorStatus.TIMEOUT, 0, 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setMaxAttempts_rejectsZero() {
+        new RetryPolicy().setMaxAttempts(0);
+    }
+}